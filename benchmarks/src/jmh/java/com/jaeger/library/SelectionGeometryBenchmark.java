@@ -0,0 +1,130 @@
+package com.jaeger.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Offset lookups of a dragged handle against a {@link ProportionalAdvanceLayout}, with and
+ * without the glyph advance index, plus the cost of rebuilding the line cache after a relayout.
+ * <p>
+ * The layout is lineLength Latin chars wide, or lineLength CJK chars of twice the advance, so a
+ * paragraph is about one line and long paragraphs give long lines. Its horizontal queries walk
+ * the line like android.text.Layout does, so their cost grows with lineLength and with the
+ * number of chars per line of the script.
+ */
+@State(Scope.Benchmark)
+public class SelectionGeometryBenchmark {
+
+    private static final int ADVANCE = 24;
+    private static final int LINE_HEIGHT = 48;
+
+    @Param({"LATIN", "CJK"})
+    public SyntheticText.Script script;
+
+    @Param({"10", "5000"})
+    public int lines;
+
+    @Param({"40", "2000"})
+    public int lineLength;
+
+    @Param({"false", "true"})
+    public boolean advanceIndex;
+
+    // chars selected when the drag starts, clamped to the text
+    @Param({"1", "1000"})
+    public int selection;
+
+    private ProportionalAdvanceLayout mLayout;
+    private LineGeometryCache mLineCache;
+    // pointer positions of a drag, x and y interleaved
+    private int[] mPoints;
+    private int mNext;
+    private int mPreviousOffset;
+    private final SelectionGeometry.HandleDrag mDrag = new SelectionGeometry.HandleDrag();
+
+    @Setup
+    public void setUp() {
+        String text = SyntheticText.create(script, lines, lineLength, 42);
+        int width = lineLength * ADVANCE * (script == SyntheticText.Script.CJK ? 2 : 1);
+        mLayout = new ProportionalAdvanceLayout(text, width, ADVANCE, LINE_HEIGHT);
+        mLineCache = new LineGeometryCache();
+        mLineCache.setAdvanceIndexEnabled(advanceIndex);
+        mLineCache.obtain(mLayout);
+
+        // the end handle of a selection at a random place
+        Random random = new Random(7);
+        int length = Math.min(selection, text.length());
+        int start = random.nextInt(text.length() - length + 1);
+        int end = start + length;
+        mDrag.start(false, start, end);
+        mPreviousOffset = end;
+
+        // a drag that wanders a few lines up and down from the end handle
+        int height = mLineCache.getLineCount() * LINE_HEIGHT;
+        int x = mLineCache.getHorizontalInLine(end);
+        int y = mLineCache.getLineTop(mLineCache.getLineForOffset(end)) + LINE_HEIGHT / 2;
+        mPoints = new int[2 * 1024];
+        for (int i = 0; i < mPoints.length; i += 2) {
+            x = Math.max(0, Math.min(width, x + random.nextInt(41) - 20));
+            y = Math.max(0, Math.min(height - 1, y + random.nextInt(41) - 20));
+            mPoints[i] = x;
+            mPoints[i + 1] = y;
+        }
+    }
+
+    @Benchmark
+    public int preciseOffset() {
+        int i = mNext;
+        mNext = (i + 2) & (mPoints.length - 1);
+        return SelectionGeometry.getPreciseOffset(mLineCache, mPoints[i], mPoints[i + 1]);
+    }
+
+    @Benchmark
+    public int hysteresisOffset() {
+        int i = mNext;
+        mNext = (i + 2) & (mPoints.length - 1);
+        mPreviousOffset = SelectionGeometry.getHysteresisOffset(mLineCache, mPoints[i], mPoints[i + 1],
+                mPreviousOffset);
+        return mPreviousOffset;
+    }
+
+    @Benchmark
+    public int handlePlacement() {
+        int i = mNext;
+        mNext = (i + 2) & (mPoints.length - 1);
+        int offset = SelectionGeometry.getPreciseOffset(mLineCache, mPoints[i], mPoints[i + 1]);
+        return SelectionGeometry.getHandleLeft(mLineCache, offset, true, 48, 25)
+                + SelectionGeometry.getHandleTop(mLineCache, offset);
+    }
+
+    /**
+     * One move of a handle drag as CursorHandle applies it: the drag offset, the selection
+     * update and the placement of both handles and of the operate window above the start.
+     */
+    @Benchmark
+    public int selectText() {
+        int i = mNext;
+        mNext = (i + 2) & (mPoints.length - 1);
+        int offset = mDrag.getDragOffset(mLineCache, mPoints[i], mPoints[i + 1], null);
+        mDrag.moveTo(offset);
+        int start = mDrag.getStart();
+        int end = mDrag.getEnd();
+        return SelectionGeometry.getHandleLeft(mLineCache, start, true, 48, 25)
+                + SelectionGeometry.getHandleTop(mLineCache, start)
+                + SelectionGeometry.getHandleLeft(mLineCache, end, false, 48, 25)
+                + SelectionGeometry.getHandleTop(mLineCache, end)
+                + mLineCache.getHorizontalInLine(start)
+                + mLineCache.getLineTop(mLineCache.getLineForOffset(start));
+    }
+
+    @Benchmark
+    public LineGeometryCache rebuild() {
+        mLineCache.invalidate();
+        return mLineCache.obtain(mLayout);
+    }
+}
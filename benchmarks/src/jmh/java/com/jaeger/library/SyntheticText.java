@@ -0,0 +1,50 @@
+package com.jaeger.library;
+
+import java.util.Random;
+
+/**
+ * Deterministic Latin and CJK texts for the benchmarks, built from paragraphs of a given line
+ * length so short chat lines and long article lines can be compared.
+ */
+final class SyntheticText {
+
+    enum Script {
+        LATIN, CJK
+    }
+
+    private static final String[] LATIN_WORDS = {
+            "the", "selection", "handle", "moves", "across", "long", "paragraphs", "of", "text",
+            "while", "layout", "offsets", "are", "resolved", "for", "every", "touch", "sample"
+    };
+
+    private SyntheticText() {
+    }
+
+    /**
+     * @param lines      number of paragraphs, separated by line feeds
+     * @param lineLength approximate chars per paragraph
+     */
+    static String create(Script script, int lines, int lineLength, long seed) {
+        Random random = new Random(seed);
+        StringBuilder builder = new StringBuilder(lines * (lineLength + 1));
+        for (int line = 0; line < lines; line++) {
+            int lineStart = builder.length();
+            while (builder.length() - lineStart < lineLength) {
+                if (script == Script.LATIN) {
+                    builder.append(LATIN_WORDS[random.nextInt(LATIN_WORDS.length)]);
+                    builder.append(random.nextInt(8) == 0 ? ". " : " ");
+                } else {
+                    // CJK Unified Ideographs, with a full stop now and then
+                    builder.append((char) (0x4E00 + random.nextInt(0x5000)));
+                    if (random.nextInt(20) == 0) {
+                        builder.append('\u3002');
+                    }
+                }
+            }
+            if (line < lines - 1) {
+                builder.append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,56 @@
+package com.jaeger.library;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Cost of building the word/sentence/paragraph index for a text, and of snapping one dragged
+ * offset against it.
+ */
+@State(Scope.Benchmark)
+public class TextBoundaryIndexBenchmark {
+
+    @Param({"LATIN", "CJK"})
+    public SyntheticText.Script script;
+
+    @Param({"10", "5000"})
+    public int lines;
+
+    @Param({"40", "2000"})
+    public int lineLength;
+
+    @Param({"1", "2", "3"})
+    public int granularity;
+
+    private String mText;
+    private TextBoundaryIndex mIndex;
+    private int[] mOffsets;
+    private int mNext;
+
+    @Setup
+    public void setUp() {
+        mText = SyntheticText.create(script, lines, lineLength, 42);
+        mIndex = new TextBoundaryIndex(mText, granularity);
+        Random random = new Random(7);
+        mOffsets = new int[1024];
+        for (int i = 0; i < mOffsets.length; i++) {
+            mOffsets[i] = random.nextInt(mText.length());
+        }
+    }
+
+    @Benchmark
+    public TextBoundaryIndex build() {
+        return new TextBoundaryIndex(mText, granularity);
+    }
+
+    @Benchmark
+    public int snap() {
+        int offset = mOffsets[mNext++ & (mOffsets.length - 1)];
+        return mIndex.floor(offset) + mIndex.ceiling(offset);
+    }
+}
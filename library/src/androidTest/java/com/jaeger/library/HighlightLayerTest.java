@@ -0,0 +1,83 @@
+package com.jaeger.library;
+
+import android.graphics.Color;
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.CharacterStyle;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * A {@link HighlightLayer} next to an active selection, which {@link SelectableTextHelper} hides
+ * as soon as the TextView holds another buffer than the one it selected in.
+ */
+public class HighlightLayerTest extends InstrumentationTestCase {
+
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog";
+
+    private TextView mTextView;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTextView = new TextView(getInstrumentation().getTargetContext());
+    }
+
+    @UiThreadTest
+    public void testRefresh_keepsTheBufferOfTheSelection() {
+        mTextView.setText(TEXT, TextView.BufferType.SPANNABLE);
+        layout();
+        // the span and the buffer of a selection in span mode
+        Spannable selected = (Spannable) mTextView.getText();
+        BackgroundColorSpan selection = new BackgroundColorSpan(Color.BLUE);
+        selected.setSpan(selection, 4, 15, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+
+        HighlightLayer layer = new HighlightLayer(mTextView);
+        layer.add(10, 19, Color.YELLOW);
+        layer.refresh();
+
+        assertSame(selected, mTextView.getText());
+        assertEquals(4, selected.getSpanStart(selection));
+        assertEquals(15, selected.getSpanEnd(selection));
+        assertEquals(2, selected.getSpans(0, selected.length(), CharacterStyle.class).length);
+    }
+
+    @UiThreadTest
+    public void testAdd_failsWithoutSpannable() {
+        mTextView.setText(TEXT);
+        HighlightLayer layer = new HighlightLayer(mTextView);
+        try {
+            layer.add(0, 3, Color.YELLOW);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, layer.size());
+    }
+
+    @UiThreadTest
+    public void testRefresh_keepsTextSetWithoutSpannable() {
+        mTextView.setText(TEXT, TextView.BufferType.SPANNABLE);
+        HighlightLayer layer = new HighlightLayer(mTextView);
+        layer.add(0, 3, Color.YELLOW);
+        mTextView.setText(TEXT);
+        layout();
+        CharSequence text = mTextView.getText();
+
+        layer.refresh();
+
+        assertSame(text, mTextView.getText());
+        assertEquals(1, layer.size());
+    }
+
+    /**
+     * Gives the detached TextView a layout and a visible rect, which the layer draws on.
+     */
+    private void layout() {
+        mTextView.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mTextView.layout(0, 0, mTextView.getMeasuredWidth(), mTextView.getMeasuredHeight());
+    }
+}
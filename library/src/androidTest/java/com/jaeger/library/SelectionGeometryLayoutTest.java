@@ -0,0 +1,117 @@
+package com.jaeger.library;
+
+import android.test.InstrumentationTestCase;
+import android.test.UiThreadTest;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * {@link SelectionGeometry} on a {@link LineGeometryCache} of a real StaticLayout, with and
+ * without the glyph advance index, against the Layout based offsets of {@link TextLayoutUtil}
+ * around the line ends, where the hack blocks of the hysteresis math decide.
+ */
+public class SelectionGeometryLayoutTest extends InstrumentationTestCase {
+
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog, "
+            + "pack my box with five dozen liquor jugs. Sphinx of black quartz, judge my vow! "
+            + "How vexingly quick daft zebras jump; the five boxing wizards jump quickly. "
+            + "Jackdaws love my big sphinx of quartz, 1234567890 (again) and again.";
+
+    private TextView mTextView;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTextView = new TextView(getInstrumentation().getTargetContext());
+        mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, 32);
+        mTextView.setText(TEXT);
+    }
+
+    @UiThreadTest
+    public void testOffsets_matchLayoutAtLineEnds() {
+        layout();
+        assertSameOffsetsAtLineEnds();
+    }
+
+    @UiThreadTest
+    public void testOffsets_matchLayoutAtLineEndsOfCenteredLines() {
+        mTextView.setGravity(Gravity.CENTER_HORIZONTAL);
+        layout();
+        assertSameOffsetsAtLineEnds();
+    }
+
+    private void assertSameOffsetsAtLineEnds() {
+        Layout layout = mTextView.getLayout();
+        assertTrue(layout instanceof StaticLayout);
+        assertTrue(layout.getLineCount() > 3);
+
+        LineGeometryCache plain = AndroidTextLayout.obtain(new LineGeometryCache(), mTextView);
+        LineGeometryCache indexed = new LineGeometryCache();
+        indexed.setAdvanceIndexEnabled(true);
+        indexed = AndroidTextLayout.obtain(indexed, mTextView);
+        assertFalse(plain.isAdvanceIndexUsed());
+        assertTrue(indexed.isAdvanceIndexUsed());
+
+        for (int line = 0; line < layout.getLineCount(); line++) {
+            int lineStart = layout.getLineStart(line);
+            int lineEnd = layout.getLineEnd(line);
+            int lineLeft = (int) layout.getLineLeft(line);
+            int lineRight = (int) layout.getLineRight(line);
+            int lastCharLeft = (int) layout.getPrimaryHorizontal(lineEnd - 1);
+            // x is relative to the left of the line, both paths add the line left back
+            int[] xs = {
+                    lastCharLeft - lineLeft - 1,
+                    lastCharLeft - lineLeft + 1,
+                    (lastCharLeft + lineRight) / 2 - lineLeft - 1,
+                    (lastCharLeft + lineRight) / 2 - lineLeft + 1,
+                    lineRight - lineLeft - 1,
+                    lineRight - lineLeft + 8,
+                    layout.getWidth() - 1
+            };
+            int lineHeight = layout.getLineBottom(line) - layout.getLineTop(line);
+            // the middle of the line, and a quarter line below and above it, inside the
+            // hysteresis threshold of its neighbours
+            int[] ys = {
+                    layout.getLineTop(line) + lineHeight / 2,
+                    layout.getLineBottom(line) + lineHeight / 4,
+                    layout.getLineTop(line) - lineHeight / 4
+            };
+            int[] previousOffsets = {lineStart, lineEnd - 1, lineEnd};
+            for (int x : xs) {
+                for (int y : ys) {
+                    if (y < 0) {
+                        continue;
+                    }
+                    int expected = TextLayoutUtil.getPreciseOffset(mTextView, x, y);
+                    String at = "line " + line + " at " + x + ", " + y;
+                    assertEquals(at, expected, SelectionGeometry.getPreciseOffset(plain, x, y));
+                    assertEquals(at, expected, SelectionGeometry.getPreciseOffset(indexed, x, y));
+                    for (int previous : previousOffsets) {
+                        if (previous >= TEXT.length()) {
+                            continue;
+                        }
+                        expected = TextLayoutUtil.getHysteresisOffset(mTextView, x, y, previous);
+                        String from = at + " from " + previous;
+                        assertEquals(from, expected,
+                                SelectionGeometry.getHysteresisOffset(plain, x, y, previous));
+                        assertEquals(from, expected,
+                                SelectionGeometry.getHysteresisOffset(indexed, x, y, previous));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives the detached TextView a multi line layout.
+     */
+    private void layout() {
+        mTextView.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mTextView.layout(0, 0, mTextView.getMeasuredWidth(), mTextView.getMeasuredHeight());
+    }
+}
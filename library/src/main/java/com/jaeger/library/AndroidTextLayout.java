@@ -0,0 +1,132 @@
+package com.jaeger.library;
+
+import android.os.Build;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.style.MetricAffectingSpan;
+import android.widget.TextView;
+
+/**
+ * {@link TextLayout} on top of the {@link Layout} of a TextView.
+ */
+class AndroidTextLayout implements TextLayout {
+
+    private final Layout mLayout;
+    private final boolean isJustified;
+
+    AndroidTextLayout(Layout layout, boolean isJustified) {
+        mLayout = layout;
+        this.isJustified = isJustified;
+    }
+
+    /**
+     * Binds lineCache to the layout of textView, only wrapping the layout again when the cache
+     * holds another one. Changing the justification mode makes the TextView build a new layout.
+     *
+     * @return the cache, or null if textView has no layout
+     */
+    static LineGeometryCache obtain(LineGeometryCache lineCache, TextView textView) {
+        Layout layout = textView.getLayout();
+        if (layout == null) {
+            return null;
+        }
+        TextLayout current = lineCache.getLayout();
+        if (current instanceof AndroidTextLayout && ((AndroidTextLayout) current).mLayout == layout) {
+            return lineCache.obtain(current);
+        }
+        return lineCache.obtain(new AndroidTextLayout(layout, isJustified(textView)));
+    }
+
+    private static boolean isJustified(TextView textView) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && textView.getJustificationMode() != Layout.JUSTIFICATION_MODE_NONE;
+    }
+
+    @Override
+    public CharSequence getText() {
+        return mLayout.getText();
+    }
+
+    @Override
+    public int getLineCount() {
+        return mLayout.getLineCount();
+    }
+
+    @Override
+    public int getLineTop(int line) {
+        return mLayout.getLineTop(line);
+    }
+
+    @Override
+    public int getLineStart(int line) {
+        return mLayout.getLineStart(line);
+    }
+
+    @Override
+    public float getLineRight(int line) {
+        return mLayout.getLineRight(line);
+    }
+
+    @Override
+    public float getPrimaryHorizontal(int offset) {
+        return mLayout.getPrimaryHorizontal(offset);
+    }
+
+    @Override
+    public int getOffsetForHorizontal(int line, float horiz) {
+        return mLayout.getOffsetForHorizontal(line, horiz);
+    }
+
+    @Override
+    public int getOffsetToLeftOf(int offset) {
+        return mLayout.getOffsetToLeftOf(offset);
+    }
+
+    /**
+     * Justified lines are stretched and metric affecting spans measure their chars with another
+     * paint, the paint of the layout gives wrong advances for both.
+     */
+    @Override
+    public boolean isMeasurableByChar() {
+        CharSequence text = mLayout.getText();
+        return !isJustified && !(text instanceof Spanned
+                && ((Spanned) text).getSpans(0, text.length(), MetricAffectingSpan.class).length > 0);
+    }
+
+    @Override
+    public boolean getLineWidths(int line, float[] widths) {
+        if (mLayout.getParagraphDirection(line) != Layout.DIR_LEFT_TO_RIGHT
+                || mLayout.getLineContainsTab(line)
+                || mLayout.getEllipsisCount(line) > 0) {
+            return false;
+        }
+        CharSequence text = mLayout.getText();
+        int start = mLayout.getLineStart(line);
+        int end = mLayout.getLineEnd(line);
+        for (int i = start; i < end; i++) {
+            if (!isSimpleChar(text.charAt(i))) {
+                return false;
+            }
+        }
+        if (end > start) {
+            mLayout.getPaint().getTextWidths(text, start, end, widths);
+        }
+        return true;
+    }
+
+    private static boolean isSimpleChar(char c) {
+        if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+            return false;
+        }
+        switch (Character.getDirectionality(c)) {
+            case Character.DIRECTIONALITY_RIGHT_TO_LEFT:
+            case Character.DIRECTIONALITY_RIGHT_TO_LEFT_ARABIC:
+            case Character.DIRECTIONALITY_ARABIC_NUMBER:
+            case Character.DIRECTIONALITY_RIGHT_TO_LEFT_EMBEDDING:
+            case Character.DIRECTIONALITY_RIGHT_TO_LEFT_OVERRIDE:
+                return false;
+            default:
+                return true;
+        }
+    }
+}
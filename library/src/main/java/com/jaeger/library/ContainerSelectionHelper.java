@@ -0,0 +1,575 @@
+package com.jaeger.library;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Build;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Selection across all the TextViews of a container, for content split into paragraphs.
+ * <p>
+ * The TextViews are mapped onto one global offset space by a {@link GlobalOffsetIndex}, the
+ * handles can be dragged from one view into another and the selected text is joined with line
+ * feeds only when it is copied or read by the listener. The handles and the operate window are
+ * the shared ones of {@link SelectionManager}, which also knows the container selection of
+ * each window. Showing a container selection or a single TextView selection hides the one that
+ * held them before.
+ * <pre>
+ * new SelectableTextHelper.Builder()
+ *         .setSelectedColor(color)
+ *         .buildForContainer(articleLayout);
+ * </pre>
+ */
+public class ContainerSelectionHelper {
+
+    private static final int DEFAULT_SHOW_DURATION = 100;
+
+    private final ViewGroup mContainer;
+    private final Context mContext;
+    private final GlobalOffsetIndex mIndex = new GlobalOffsetIndex();
+    // per view of mIndex
+    private LineGeometryCache[] mLineCaches = new LineGeometryCache[0];
+    private LineCacheInvalidator[] mLineCacheInvalidators = new LineCacheInvalidator[0];
+    private BackgroundColorSpan[] mSpans = new BackgroundColorSpan[0];
+    private final ScreenLocationTracker mLocationTracker;
+
+    private final int mSelectedColor;
+    private final int mCursorHandleColor;
+    private final int mCursorHandleSize;
+    private final boolean isVsyncCoalescingEnabled;
+    private final boolean isAutoScrollEnabled;
+    private final boolean isOverlayRendererEnabled;
+    private OnSelectListener mSelectListener;
+
+    // null unless a metrics listener is installed
+    private final OnSelectionMetricsListener mMetricsListener;
+    private final SelectionMetrics mMetrics;
+    private int mSpanOperationCount;
+
+    private int mStart;
+    private int mEnd;
+    private CharSequence mSelectionContent;
+    // views that currently carry a highlight span, -1 when none
+    private int mSpanFirst = -1;
+    private int mSpanLast = -1;
+
+    // the shared views of SelectionManager while this selection holds them
+    private CursorHandle mStartHandle;
+    private CursorHandle mEndHandle;
+    private OperateWindow mOperateWindow;
+
+    private int mTouchX;
+    private int mTouchY;
+    private boolean isCurrentHide = true;
+    private boolean isHideWhenScroll;
+    private final int[] mTempCoors = new int[2];
+    private final Rect mTempRect = new Rect();
+
+    private final View.OnTouchListener mOnTouchListener = new View.OnTouchListener() {
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            mTouchX = (int) event.getX();
+            mTouchY = (int) event.getY();
+            return false;
+        }
+    };
+
+    private final View.OnLongClickListener mOnLongClickListener = new View.OnLongClickListener() {
+        @Override
+        public boolean onLongClick(View v) {
+            showSelectView((TextView) v, mTouchX, mTouchY);
+            return true;
+        }
+    };
+
+    private final ViewTreeDispatcher.Client mViewTreeClient = new ViewTreeDispatcher.Client() {
+        @Override
+        public void onPreDraw() {
+            mLocationTracker.invalidate();
+            if (isHideWhenScroll) {
+                isHideWhenScroll = false;
+                mContainer.removeCallbacks(mShowSelectViewRunnable);
+                mContainer.postDelayed(mShowSelectViewRunnable, DEFAULT_SHOW_DURATION);
+            }
+        }
+
+        @Override
+        public void onScrollChanged() {
+            mLocationTracker.invalidate();
+            // during a drag the handles move themselves
+            if (!isHideWhenScroll && !isCurrentHide && !isHandleDragging()) {
+                isHideWhenScroll = true;
+                dismissViews();
+            }
+        }
+    };
+
+    private final Runnable mShowSelectViewRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (!isCurrentHide) {
+                mIndex.refresh(mContainer);
+                showViews();
+            }
+        }
+    };
+
+    ContainerSelectionHelper(ViewGroup container, int selectedColor, int cursorHandleColor,
+                             float cursorHandleSizeInDp, boolean vsyncCoalescingEnabled,
+                             boolean autoScrollEnabled, boolean overlayRendererEnabled,
+                             OnSelectionMetricsListener metricsListener) {
+        mContainer = container;
+        mContext = container.getContext().getApplicationContext();
+        mSelectedColor = selectedColor;
+        mCursorHandleColor = cursorHandleColor;
+        mCursorHandleSize = TextLayoutUtil.dp2px(mContext, cursorHandleSizeInDp);
+        isVsyncCoalescingEnabled = vsyncCoalescingEnabled
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+        isAutoScrollEnabled = autoScrollEnabled
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+        isOverlayRendererEnabled = overlayRendererEnabled;
+        mMetricsListener = metricsListener;
+        mMetrics = metricsListener != null ? new SelectionMetrics() : null;
+        mLocationTracker = new ScreenLocationTracker(container);
+
+        updateViews();
+        ensureSpannable();
+        container.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+            @Override
+            public void onViewAttachedToWindow(View v) {
+            }
+
+            @Override
+            public void onViewDetachedFromWindow(View v) {
+                hideSelectView();
+                SelectionManager.getInstance().remove(ContainerSelectionHelper.this);
+            }
+        });
+    }
+
+    ViewGroup getContainer() {
+        return mContainer;
+    }
+
+    public void setSelectListener(OnSelectListener selectListener) {
+        mSelectListener = selectListener;
+    }
+
+    /**
+     * @return a lazy view of the selected text, the texts of the views joined by line feeds
+     */
+    public CharSequence getSelectionContent() {
+        return mSelectionContent;
+    }
+
+    private void showSelectView(TextView textView, int x, int y) {
+        if (mMetrics != null) {
+            mMetrics.mLongPressNanos = System.nanoTime();
+        }
+        hideSelectView();
+        updateViews();
+        mIndex.refresh(mContainer);
+
+        int index = mIndex.indexOf(textView);
+        if (index < 0) {
+            return;
+        }
+        int offset = TextLayoutUtil.getPreciseOffset(textView,
+                x - textView.getTotalPaddingLeft() + textView.getScrollX(),
+                y - textView.getTotalPaddingTop() + textView.getScrollY(), mLineCaches[index]);
+        if (offset < 0 || offset >= mIndex.getTextLength(index)) {
+            return;
+        }
+        int start = mIndex.getStart(index) + offset;
+        // after the offset is resolved, a conversion drops the layout
+        boolean isConverted = ensureSpannable();
+        selectText(start, start + 1);
+
+        isCurrentHide = false;
+        // hides the selection that held the shared views, in this or another window
+        acquireViews();
+        SelectionManager.getInstance().setWindowContainer(this);
+        mLocationTracker.start();
+        showViewsAfterLayout(isConverted);
+        ViewTreeDispatcher.register(mContainer, mViewTreeClient);
+        if (mMetrics != null) {
+            mMetrics.mLongPressToShownNanos = System.nanoTime() - mMetrics.mLongPressNanos;
+            mMetrics.mLongPressNanos = 0;
+            mMetricsListener.onSelectionShown(mMetrics);
+        }
+    }
+
+    private void showAllTextSelected() {
+        removeSpans(mSpanFirst, mSpanLast);
+        mSpanFirst = mSpanLast = -1;
+        mSelectionContent = null;
+        updateViews();
+        boolean isConverted = ensureSpannable();
+        mIndex.refresh(mContainer);
+        selectText(0, mIndex.length());
+        dismissViews();
+        showViewsAfterLayout(isConverted);
+    }
+
+    /**
+     * Collects the TextViews of the container again, the app may have added, removed or hidden
+     * some since the last selection. Views that joined get the touch and long-click listeners,
+     * the ones that stayed keep their line caches and spans.
+     */
+    private void updateViews() {
+        IdentityHashMap<TextView, Integer> oldIndexes = new IdentityHashMap<TextView, Integer>();
+        for (int i = 0; i < mIndex.getViewCount(); i++) {
+            oldIndexes.put(mIndex.getView(i), i);
+        }
+        LineGeometryCache[] oldLineCaches = mLineCaches;
+        LineCacheInvalidator[] oldLineCacheInvalidators = mLineCacheInvalidators;
+        BackgroundColorSpan[] oldSpans = mSpans;
+
+        mIndex.setViews(mContainer);
+        int count = mIndex.getViewCount();
+        mLineCaches = new LineGeometryCache[count];
+        mLineCacheInvalidators = new LineCacheInvalidator[count];
+        mSpans = new BackgroundColorSpan[count];
+        for (int i = 0; i < count; i++) {
+            TextView textView = mIndex.getView(i);
+            Integer oldIndex = oldIndexes.remove(textView);
+            if (oldIndex != null) {
+                mLineCaches[i] = oldLineCaches[oldIndex];
+                mLineCacheInvalidators[i] = oldLineCacheInvalidators[oldIndex];
+                mSpans[i] = oldSpans[oldIndex];
+                continue;
+            }
+            textView.setOnTouchListener(mOnTouchListener);
+            textView.setOnLongClickListener(mOnLongClickListener);
+            mLineCaches[i] = new LineGeometryCache();
+            mLineCacheInvalidators[i] = new LineCacheInvalidator(mLineCaches[i]);
+        }
+        for (Integer oldIndex : oldIndexes.values()) {
+            // left the container or hidden, its text is not watched anymore
+            oldLineCacheInvalidators[oldIndex].watch(null);
+        }
+    }
+
+    /**
+     * Converts the texts the app set as another type since the last selection to Spannables,
+     * the highlight spans go on them. The single view helper does the same in ensureText().
+     *
+     * @return whether a text was converted, its view has no layout until the next pass
+     */
+    private boolean ensureSpannable() {
+        boolean isConverted = false;
+        for (int i = 0; i < mIndex.getViewCount(); i++) {
+            TextView textView = mIndex.getView(i);
+            if (!(textView.getText() instanceof Spannable)) {
+                textView.setText(textView.getText(), TextView.BufferType.SPANNABLE);
+                isConverted = true;
+            }
+            mLineCacheInvalidators[i].watch(textView.getText());
+        }
+        return isConverted;
+    }
+
+    /**
+     * Shows the handles and the operate window, after the next layout pass if a conversion
+     * dropped the layout of a view.
+     */
+    private void showViewsAfterLayout(boolean isLayoutPending) {
+        if (isLayoutPending) {
+            mContainer.removeCallbacks(mShowSelectViewRunnable);
+            mContainer.post(mShowSelectViewRunnable);
+        } else {
+            showViews();
+        }
+    }
+
+    public void hideSelectView() {
+        if (isCurrentHide) {
+            return;
+        }
+        isCurrentHide = true;
+        isHideWhenScroll = false;
+        ViewTreeDispatcher.unregister(mViewTreeClient);
+        mContainer.removeCallbacks(mShowSelectViewRunnable);
+        mLocationTracker.stop();
+        dismissViews();
+        releaseViews();
+        removeSpans(mSpanFirst, mSpanLast);
+        mSpanFirst = mSpanLast = -1;
+        mSelectionContent = null;
+    }
+
+    /**
+     * Takes the shared handles and operate window from whichever selection holds them.
+     */
+    private void acquireViews() {
+        SelectionManager manager = SelectionManager.getInstance();
+        // falls back to the PopupWindows when the container has no window with a ViewGroup root
+        SelectionOverlay overlay = isOverlayRendererEnabled ? SelectionOverlay.obtain(mContainer) : null;
+        manager.acquireViews(mViewHost, overlay);
+        mOperateWindow = manager.getOperateWindow();
+        mStartHandle = manager.getCursorHandle(true);
+        mEndHandle = manager.getCursorHandle(false);
+    }
+
+    private void releaseViews() {
+        SelectionManager.getInstance().releaseViews(mViewHost);
+        mStartHandle = null;
+        mEndHandle = null;
+        mOperateWindow = null;
+    }
+
+    private void selectText(int start, int end) {
+        if (start > end) {
+            int temp = start;
+            start = end;
+            end = temp;
+        }
+        end = Math.min(end, mIndex.length());
+        if (start == mStart && end == mEnd && mSelectionContent != null) {
+            return;
+        }
+        mStart = start;
+        mEnd = end;
+        updateSpans();
+        mSelectionContent = mIndex.subSequence(mStart, mEnd);
+        if (mSelectListener != null) {
+            mSelectListener.onTextSelected(mSelectionContent);
+        }
+    }
+
+    /**
+     * Moves the highlight spans to the views of [mStart, mEnd), touching only the views that
+     * enter or leave the range and the two boundary views.
+     */
+    private void updateSpans() {
+        int first = mIndex.getViewForOffset(mStart);
+        int last = mIndex.getViewForOffset(Math.max(mStart, mEnd - 1));
+        if (mSpanFirst >= 0) {
+            removeSpans(mSpanFirst, Math.min(mSpanLast, first - 1));
+            removeSpans(Math.max(mSpanFirst, last + 1), mSpanLast);
+        }
+        for (int i = first; i <= last; i++) {
+            int viewStart = mIndex.getStart(i);
+            int localStart = Math.max(mStart - viewStart, 0);
+            int localEnd = Math.min(mEnd - viewStart, mIndex.getTextLength(i));
+            CharSequence text = mIndex.getView(i).getText();
+            if (!(text instanceof Spannable) || localStart >= localEnd) {
+                continue;
+            }
+            Spannable spannable = (Spannable) text;
+            if (mSpans[i] == null) {
+                mSpans[i] = new BackgroundColorSpan(mSelectedColor);
+            }
+            if (spannable.getSpanStart(mSpans[i]) != localStart || spannable.getSpanEnd(mSpans[i]) != localEnd) {
+                spannable.setSpan(mSpans[i], localStart, localEnd, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
+                mSpanOperationCount++;
+            }
+        }
+        mSpanFirst = first;
+        mSpanLast = last;
+    }
+
+    private void removeSpans(int first, int last) {
+        for (int i = Math.max(first, 0); i <= last; i++) {
+            CharSequence text = mIndex.getView(i).getText();
+            if (mSpans[i] != null && text instanceof Spannable) {
+                ((Spannable) text).removeSpan(mSpans[i]);
+                mSpanOperationCount++;
+            }
+        }
+    }
+
+    private void copySelection() {
+        if (mSelectionContent == null) {
+            return;
+        }
+        String content = mSelectionContent.toString();
+        ClipboardManager clip = (ClipboardManager) mContext.getSystemService(Context.CLIPBOARD_SERVICE);
+        clip.setPrimaryClip(ClipData.newPlainText(content, content));
+        if (mSelectListener != null) {
+            mSelectListener.onTextSelected(content);
+        }
+        hideSelectView();
+    }
+
+    /**
+     * @return the line geometry of view index, or null if it is not laid out
+     */
+    private LineGeometryCache obtainLineCache(int index) {
+        return AndroidTextLayout.obtain(mLineCaches[index], mIndex.getView(index));
+    }
+
+    private void showViews() {
+        if (mStartHandle == null) {
+            return;
+        }
+        mStartHandle.show();
+        mEndHandle.show();
+        mOperateWindow.show();
+    }
+
+    private void dismissViews() {
+        if (mStartHandle != null) {
+            mStartHandle.dismiss();
+            mEndHandle.dismiss();
+            mOperateWindow.dismiss();
+        }
+    }
+
+    private boolean isHandleDragging() {
+        return mStartHandle != null && (mStartHandle.isDragging() || mEndHandle.isDragging());
+    }
+
+    // what the shared views of SelectionManager see of this selection, offsets are global
+    private final SelectionViewHost mViewHost = new SelectionViewHost() {
+        @Override
+        public View getAnchorView() {
+            return mContainer;
+        }
+
+        @Override
+        public int getCursorHandleSize() {
+            return mCursorHandleSize;
+        }
+
+        @Override
+        public int getCursorHandleColor() {
+            return mCursorHandleColor;
+        }
+
+        @Override
+        public SelectionMetrics getMetrics() {
+            return mMetrics;
+        }
+
+        @Override
+        public ScreenLocationTracker getLocationTracker() {
+            return mLocationTracker;
+        }
+
+        @Override
+        public boolean isVsyncCoalescingEnabled() {
+            return isVsyncCoalescingEnabled;
+        }
+
+        @Override
+        public boolean isAutoScrollEnabled() {
+            return isAutoScrollEnabled;
+        }
+
+        @Override
+        public int getSelectionStart() {
+            return mStart;
+        }
+
+        @Override
+        public int getSelectionEnd() {
+            return mEnd;
+        }
+
+        @Override
+        public boolean getHandlePosition(int offset, boolean isLeft, int handleWidth, int padding, int[] outCoors) {
+            int index = mIndex.getViewForOffset(offset);
+            LineGeometryCache lineCache = obtainLineCache(index);
+            if (lineCache == null) {
+                return false;
+            }
+            int local = Math.min(offset - mIndex.getStart(index), mIndex.getTextLength(index));
+            mLocationTracker.getLocation(outCoors);
+            outCoors[0] += mIndex.getTextLeft(index)
+                    + SelectionGeometry.getHandleLeft(lineCache, local, isLeft, handleWidth, padding);
+            outCoors[1] += mIndex.getTextTop(index) + SelectionGeometry.getHandleTop(lineCache, local);
+            return true;
+        }
+
+        @Override
+        public boolean getLineTopPosition(int offset, int[] outCoors) {
+            int index = mIndex.getViewForOffset(offset);
+            LineGeometryCache lineCache = obtainLineCache(index);
+            if (lineCache == null) {
+                return false;
+            }
+            int local = Math.min(offset - mIndex.getStart(index), mIndex.getTextLength(index));
+            mLocationTracker.getLocation(outCoors);
+            outCoors[0] += mIndex.getTextLeft(index) + lineCache.getHorizontalInLine(local);
+            outCoors[1] += mIndex.getTextTop(index) + lineCache.getLineTop(lineCache.getLineForOffset(local));
+            return true;
+        }
+
+        @Override
+        public boolean isOffsetVisible(int offset, boolean atLineBottom) {
+            int index = mIndex.getViewForOffset(offset);
+            LineGeometryCache lineCache = obtainLineCache(index);
+            int local = Math.min(offset - mIndex.getStart(index), mIndex.getTextLength(index));
+            return lineCache != null
+                    && TextLayoutUtil.isOffsetVisible(mIndex.getView(index), lineCache, local, atLineBottom, mTempRect);
+        }
+
+        @Override
+        public int getDragOffset(SelectionGeometry.HandleDrag drag, int rawX, int rawY) {
+            mLocationTracker.getLocation(mTempCoors);
+            int x = rawX - mTempCoors[0];
+            int y = rawY - mTempCoors[1];
+            int index = mIndex.getViewAt(x, y);
+            if (index < 0) {
+                return -1;
+            }
+            LineGeometryCache lineCache = obtainLineCache(index);
+            if (lineCache == null) {
+                return -1;
+            }
+            x -= mIndex.getTextLeft(index);
+            y -= mIndex.getTextTop(index);
+            // with hysteresis while the dragged end stays in its view
+            int previous = drag.getOffset() - mIndex.getStart(index);
+            int offset = previous >= 0 && previous <= mIndex.getTextLength(index)
+                    ? SelectionGeometry.getHysteresisOffset(lineCache, x, y, previous)
+                    : SelectionGeometry.getPreciseOffset(lineCache, x, y);
+            return mIndex.getStart(index) + Math.max(offset, 0);
+        }
+
+        @Override
+        public void selectText(int start, int end) {
+            ContainerSelectionHelper.this.selectText(start, end);
+        }
+
+        @Override
+        public void onHandleDragStarted() {
+            mSpanOperationCount = 0;
+            mIndex.refresh(mContainer);
+        }
+
+        @Override
+        public void onHandleDragFinished() {
+            if (mMetrics != null) {
+                mMetrics.mSpanOperationCount = mSpanOperationCount;
+                mMetricsListener.onDragFinished(mMetrics);
+            }
+        }
+
+        @Override
+        public void copySelection() {
+            ContainerSelectionHelper.this.copySelection();
+        }
+
+        @Override
+        public void selectAll() {
+            showAllTextSelected();
+        }
+
+        @Override
+        public void onViewsReleased() {
+            hideSelectView();
+        }
+    };
+}
@@ -0,0 +1,342 @@
+package com.jaeger.library;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.PopupWindow;
+
+/**
+ * A selection handle, one of the two shared ones of {@link SelectionManager}. It is drawn in
+ * its own PopupWindow or, when bound with one, in a {@link SelectionOverlay}, and drags the
+ * start or end of the selection of the {@link SelectionViewHost} it is bound to.
+ */
+class CursorHandle extends View {
+
+    private PopupWindow mPopupWindow;
+    private Paint mPaint;
+
+    private int mCircleRadius;
+    private int mWidth;
+    private int mHeight;
+    private int mPadding = 25;
+    private boolean isLeft;
+
+    private SelectionViewHost mHost;
+    // drawn here instead of mPopupWindow when set
+    private SelectionOverlay mOverlay;
+
+    private int mCurMotionRawX;
+    private int mCurMotionRawY;
+
+    private final SelectionGeometry.HandleDrag mDrag = new SelectionGeometry.HandleDrag();
+
+    private int[] mTempCoors = new int[2];
+
+    private boolean isMovePending;
+    private boolean isFrameCallbackPosted;
+    private Choreographer.FrameCallback mFrameCallback;
+
+    private boolean isDragging;
+    private EdgeAutoScroller mAutoScroller;
+    private FrameOverrunMonitor mFrameOverrunMonitor;
+
+    CursorHandle(Context context) {
+        super(context);
+        mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+        mPopupWindow = new PopupWindow(this);
+        mPopupWindow.setClippingEnabled(false);
+    }
+
+    /**
+     * Re-targets the pooled handle to host, or detaches it when host is null.
+     */
+    void bind(SelectionViewHost host, boolean isLeft, SelectionOverlay overlay) {
+        mHost = host;
+        mOverlay = overlay;
+        if (host == null) {
+            stopFrameOverrunMonitor();
+            return;
+        }
+        this.isLeft = isLeft;
+        mCircleRadius = host.getCursorHandleSize() / 2;
+        mWidth = mCircleRadius * 2;
+        mHeight = mCircleRadius * 2;
+        mPaint.setColor(host.getCursorHandleColor());
+        mPopupWindow.setWidth(mWidth + mPadding * 2);
+        mPopupWindow.setHeight(mHeight + mPadding / 2);
+        // the size SelectionOverlay draws and hit tests the handle with
+        layout(0, 0, mWidth + mPadding * 2, mHeight + mPadding / 2);
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawCircle(mCircleRadius + mPadding, mCircleRadius, mCircleRadius, mPaint);
+        if (isLeft) {
+            canvas.drawRect(mCircleRadius + mPadding, 0, mCircleRadius * 2 + mPadding, mCircleRadius, mPaint);
+        } else {
+            canvas.drawRect(mPadding, 0, mCircleRadius + mPadding, mCircleRadius, mPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mHost == null) {
+            return false;
+        }
+        OperateWindow operateWindow = SelectionManager.getInstance().getOperateWindow();
+        switch (event.getAction()) {
+            case MotionEvent.ACTION_DOWN:
+                mHost.onHandleDragStarted();
+                SelectionMetrics metrics = mHost.getMetrics();
+                if (metrics != null) {
+                    metrics.resetDrag();
+                    startFrameOverrunMonitor(metrics);
+                }
+                mDrag.start(isLeft, mHost.getSelectionStart(), mHost.getSelectionEnd());
+                isDragging = true;
+                if (mHost.isAutoScrollEnabled()) {
+                    startAutoScroll();
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                isDragging = false;
+                if (mAutoScroller != null) {
+                    mAutoScroller.detach();
+                }
+                flushPendingMove();
+                operateWindow.show();
+                stopFrameOverrunMonitor();
+                mHost.onHandleDragFinished();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                operateWindow.dismiss();
+
+                // a batched event already carries the newest sample as its current position,
+                // the historical samples before it would be overwritten in the same frame
+                mCurMotionRawX = (int) event.getRawX();
+                mCurMotionRawY = (int) event.getRawY();
+
+                if (mAutoScroller != null) {
+                    mAutoScroller.onDrag(mCurMotionRawY);
+                }
+                if (mAutoScroller != null && mAutoScroller.isRunning()) {
+                    // applied by the next auto-scroll frame
+                    isMovePending = true;
+                } else if (mHost.isVsyncCoalescingEnabled()) {
+                    postPendingMove();
+                } else {
+                    update(mCurMotionRawX, mCurMotionRawY);
+                }
+
+                break;
+        }
+        return true;
+    }
+
+    private void startFrameOverrunMonitor(SelectionMetrics metrics) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            if (mFrameOverrunMonitor == null) {
+                mFrameOverrunMonitor = new FrameOverrunMonitor(getContext());
+            }
+            mFrameOverrunMonitor.start(metrics);
+        }
+    }
+
+    private void stopFrameOverrunMonitor() {
+        if (mFrameOverrunMonitor != null) {
+            mFrameOverrunMonitor.stop();
+        }
+    }
+
+    /**
+     * Remembers that the latest pointer position has to be applied, and makes sure one
+     * frame callback is posted for it. Only used from API 16 on.
+     */
+    private void postPendingMove() {
+        isMovePending = true;
+        if (isFrameCallbackPosted) {
+            return;
+        }
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    isFrameCallbackPosted = false;
+                    flushPendingMove();
+                }
+            };
+        }
+        isFrameCallbackPosted = true;
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    private void startAutoScroll() {
+        if (mAutoScroller == null) {
+            mAutoScroller = new EdgeAutoScroller(getContext(), new Runnable() {
+                @Override
+                public void run() {
+                    onAutoScrollFrame();
+                }
+            });
+        }
+        mAutoScroller.attach(mHost.getAnchorView());
+    }
+
+    /**
+     * The parent scrolled under the pointer: selects up to the text now below it and moves
+     * the other handle with its text, once per frame.
+     */
+    private void onAutoScrollFrame() {
+        mHost.getLocationTracker().invalidate();
+        isMovePending = true;
+        flushPendingMove();
+        SelectionManager.getInstance().getCursorHandle(!isLeft).follow();
+    }
+
+    private void flushPendingMove() {
+        if (isFrameCallbackPosted) {
+            isFrameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+        if (isMovePending) {
+            isMovePending = false;
+            update(mCurMotionRawX, mCurMotionRawY);
+        }
+    }
+
+    private void update(int curRawX, int curRawY) {
+        SelectionMetrics metrics = mHost.getMetrics();
+        long startNanos = metrics != null ? System.nanoTime() : 0;
+
+        int offset = mHost.getDragOffset(mDrag, curRawX, curRawY);
+        if (offset < 0) {
+            return;
+        }
+        if (metrics != null) {
+            metrics.mOffsetLookupCount++;
+        }
+
+        if (mDrag.moveTo(offset)) {
+            if (mDrag.isLeft() != isLeft) {
+                // crossed the other end, the handles swap roles
+                CursorHandle handle = SelectionManager.getInstance().getCursorHandle(!isLeft);
+                changeDirection();
+                handle.changeDirection();
+                mHost.selectText(mDrag.getStart(), mDrag.getEnd());
+                handle.updateCursorHandle();
+            } else {
+                mHost.selectText(mDrag.getStart(), mDrag.getEnd());
+            }
+            updateCursorHandle();
+        }
+        if (metrics != null) {
+            metrics.onMove(System.nanoTime() - startNanos);
+        }
+    }
+
+    private int getOffset() {
+        return isLeft ? mHost.getSelectionStart() : mHost.getSelectionEnd();
+    }
+
+    private void updateCursorHandle() {
+        if (!mHost.getHandlePosition(getOffset(), isLeft, mWidth, mPadding, mTempCoors)) {
+            return;
+        }
+        if (mOverlay != null) {
+            mOverlay.show(this, mTempCoors[0], mTempCoors[1]);
+            return;
+        }
+        mPopupWindow.update(mTempCoors[0], mTempCoors[1], -1, -1);
+        SelectionMetrics metrics = mHost.getMetrics();
+        if (metrics != null) {
+            metrics.mPopupUpdateCount++;
+        }
+    }
+
+    /**
+     * Scroll follow mode: moves the shown handle with the text, hides it while its offset is
+     * scrolled out.
+     */
+    void follow() {
+        if (isDragging) {
+            // stays under the pointer, even where its line is clipped by the scrolling parent
+            updateCursorHandle();
+            return;
+        }
+        if (!mHost.isOffsetVisible(getOffset(), true)) {
+            dismiss();
+        } else if (!isHandleShowing()) {
+            show();
+        } else {
+            updateCursorHandle();
+        }
+    }
+
+    void show() {
+        if (!mHost.getHandlePosition(getOffset(), isLeft, mWidth, mPadding, mTempCoors)) {
+            return;
+        }
+        if (mOverlay != null) {
+            mOverlay.show(this, mTempCoors[0], mTempCoors[1]);
+            return;
+        }
+        mPopupWindow.showAtLocation(mHost.getAnchorView(), Gravity.NO_GRAVITY, mTempCoors[0], mTempCoors[1]);
+        SelectionMetrics metrics = mHost.getMetrics();
+        if (metrics != null) {
+            metrics.mPopupShowCount++;
+        }
+    }
+
+    boolean isHandleShowing() {
+        return mOverlay != null ? mOverlay.isShowing(this) : mPopupWindow.isShowing();
+    }
+
+    boolean isLeft() {
+        return isLeft;
+    }
+
+    boolean isDragging() {
+        return isDragging;
+    }
+
+    private void changeDirection() {
+        isLeft = !isLeft;
+        invalidate();
+        if (mOverlay != null) {
+            mOverlay.invalidate();
+        }
+    }
+
+    /**
+     * Hides the handle and ends a drag in progress, also when the selection is hidden before
+     * the drag's ACTION_UP or ACTION_CANCEL arrives.
+     */
+    void dismiss() {
+        isDragging = false;
+        stopFrameOverrunMonitor();
+        if (mAutoScroller != null) {
+            mAutoScroller.detach();
+        }
+        if (isFrameCallbackPosted) {
+            isFrameCallbackPosted = false;
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        }
+        isMovePending = false;
+        if (mOverlay != null) {
+            mOverlay.hide(this);
+            return;
+        }
+        if (mHost != null && mHost.getMetrics() != null && mPopupWindow.isShowing()) {
+            mHost.getMetrics().mPopupDismissCount++;
+        }
+        mPopupWindow.dismiss();
+    }
+}
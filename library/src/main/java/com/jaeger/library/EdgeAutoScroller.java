@@ -0,0 +1,168 @@
+package com.jaeger.library;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.ViewParent;
+import android.widget.AbsListView;
+
+/**
+ * Scrolls the nearest vertically scrollable parent of a TextView while a handle is dragged into
+ * the top or bottom edge of that parent.
+ * <p>
+ * The speed grows linearly with the depth of the pointer in the edge area and is reached at
+ * the edge itself, further out it stays at the maximum. Scrolling runs on Choreographer frame
+ * callbacks and calls the client once per frame, so the selection follows the text that moved
+ * under the stationary pointer without waiting for touch events, and the move events that
+ * arrive meanwhile only have to record the pointer.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class EdgeAutoScroller implements Choreographer.FrameCallback {
+
+    private static final float EDGE_SIZE_DP = 48;
+    private static final float MAX_SPEED_DP_PER_SECOND = 1200;
+    private static final long DEFAULT_FRAME_NANOS = 16666667L;
+
+    private final Runnable mClient;
+    private final int mEdgeSize;
+    private final float mMaxSpeed;
+    private final int[] mTempCoors = new int[2];
+
+    private View mScrollParent;
+    private int mParentTop;
+    private int mParentBottom;
+    private int mRawY;
+    private long mLastFrameNanos;
+    // sub pixel distance carried over to the next frame
+    private float mRemainder;
+    private boolean isRunning;
+
+    /**
+     * @param client called on every frame while scrolling, after the parent was scrolled, and
+     *               once more on the frame that stops
+     */
+    EdgeAutoScroller(Context context, Runnable client) {
+        mClient = client;
+        mEdgeSize = TextLayoutUtil.dp2px(context, EDGE_SIZE_DP);
+        mMaxSpeed = TextLayoutUtil.dp2px(context, MAX_SPEED_DP_PER_SECOND) / 1000000000f;
+    }
+
+    /**
+     * Looks up the scrollable parent of view for a new drag.
+     */
+    void attach(View view) {
+        stop();
+        mScrollParent = null;
+        ViewParent parent = view.getParent();
+        while (parent instanceof View) {
+            View candidate = (View) parent;
+            if (candidate.canScrollVertically(-1) || candidate.canScrollVertically(1)) {
+                mScrollParent = candidate;
+                break;
+            }
+            parent = candidate.getParent();
+        }
+        updateParentBounds();
+    }
+
+    void detach() {
+        stop();
+        mScrollParent = null;
+    }
+
+    boolean isRunning() {
+        return isRunning;
+    }
+
+    /**
+     * Starts scrolling when rawY is in an edge area of the parent, the frame callback stops
+     * by itself once it is not anymore.
+     */
+    void onDrag(int rawY) {
+        mRawY = rawY;
+        if (isRunning || mScrollParent == null || getDirection() == 0) {
+            return;
+        }
+        isRunning = true;
+        mLastFrameNanos = 0;
+        mRemainder = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void stop() {
+        if (isRunning) {
+            isRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!isRunning) {
+            return;
+        }
+        long frameNanos = mLastFrameNanos == 0 ? DEFAULT_FRAME_NANOS : frameTimeNanos - mLastFrameNanos;
+        mLastFrameNanos = frameTimeNanos;
+
+        // the parent may have moved, a nested scroll or a layout change
+        updateParentBounds();
+        int direction = getDirection();
+        if (direction == 0 || !mScrollParent.canScrollVertically(direction)) {
+            isRunning = false;
+            // the moves recorded since the last frame still have to be applied
+            mClient.run();
+            return;
+        }
+        int depth = direction < 0 ? mParentTop + mEdgeSize - mRawY : mRawY - (mParentBottom - mEdgeSize);
+        float distance = direction * mMaxSpeed * Math.min(1f, (float) depth / mEdgeSize) * frameNanos + mRemainder;
+        int dy = (int) distance;
+        mRemainder = distance - dy;
+        if (dy != 0) {
+            scrollParentBy(dy);
+        }
+        mClient.run();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * @return -1 if the pointer is in the top edge area, 1 in the bottom one, otherwise 0
+     */
+    private int getDirection() {
+        if (mParentBottom - mParentTop < mEdgeSize * 3) {
+            // too small for edge areas, they would cover most of it
+            return 0;
+        }
+        if (mRawY < mParentTop + mEdgeSize) {
+            return -1;
+        }
+        if (mRawY > mParentBottom - mEdgeSize) {
+            return 1;
+        }
+        return 0;
+    }
+
+    private void updateParentBounds() {
+        if (mScrollParent == null) {
+            return;
+        }
+        mScrollParent.getLocationOnScreen(mTempCoors);
+        mParentTop = mTempCoors[1] + mScrollParent.getPaddingTop();
+        mParentBottom = mTempCoors[1] + mScrollParent.getHeight() - mScrollParent.getPaddingBottom();
+    }
+
+    private void scrollParentBy(int dy) {
+        if (mScrollParent instanceof AbsListView) {
+            // AbsListView ignores scrollBy(), its children are offset instead
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                ((AbsListView) mScrollParent).scrollListBy(dy);
+            } else {
+                ((AbsListView) mScrollParent).smoothScrollBy(dy, 0);
+            }
+        } else {
+            // ScrollView, NestedScrollView and RecyclerView clamp the distance themselves
+            mScrollParent.scrollBy(0, dy);
+        }
+    }
+}
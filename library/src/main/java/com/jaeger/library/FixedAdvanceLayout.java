@@ -0,0 +1,114 @@
+package com.jaeger.library;
+
+import java.util.Arrays;
+
+/**
+ * A {@link TextLayout} where every char is advance wide and every line lineHeight high. Lines
+ * end after a line feed or after charsPerLine chars, like a monospaced TextView with breaks
+ * anywhere.
+ * <p>
+ * Plain Java, it lets the selection math run in unit tests and benchmarks without a device.
+ */
+class FixedAdvanceLayout implements TextLayout {
+
+    private final CharSequence mText;
+    private final float mAdvance;
+    private final int mLineHeight;
+    // mLineStarts[mLineCount] is the end of the text
+    private int[] mLineStarts = new int[16];
+    private int mLineCount;
+
+    FixedAdvanceLayout(CharSequence text, int charsPerLine, float advance, int lineHeight) {
+        mText = text;
+        mAdvance = advance;
+        mLineHeight = lineHeight;
+        int length = text.length();
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n' || i + 1 - lineStart == charsPerLine) {
+                addLine(lineStart);
+                lineStart = i + 1;
+            }
+        }
+        // like android.text.Layout, text ending with a line feed has an empty last line
+        addLine(lineStart);
+        if (mLineCount == mLineStarts.length) {
+            mLineStarts = Arrays.copyOf(mLineStarts, mLineCount + 1);
+        }
+        mLineStarts[mLineCount] = length;
+    }
+
+    private void addLine(int start) {
+        if (mLineCount == mLineStarts.length) {
+            mLineStarts = Arrays.copyOf(mLineStarts, mLineCount * 2);
+        }
+        mLineStarts[mLineCount++] = start;
+    }
+
+    private int getLineForOffset(int offset) {
+        int index = Arrays.binarySearch(mLineStarts, 0, mLineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private int getVisibleLineEnd(int line) {
+        int end = mLineStarts[line + 1];
+        return end > mLineStarts[line] && mText.charAt(end - 1) == '\n' ? end - 1 : end;
+    }
+
+    @Override
+    public CharSequence getText() {
+        return mText;
+    }
+
+    @Override
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    @Override
+    public int getLineTop(int line) {
+        return line * mLineHeight;
+    }
+
+    @Override
+    public int getLineStart(int line) {
+        return mLineStarts[line];
+    }
+
+    @Override
+    public float getLineRight(int line) {
+        return (getVisibleLineEnd(line) - mLineStarts[line]) * mAdvance;
+    }
+
+    @Override
+    public float getPrimaryHorizontal(int offset) {
+        return (offset - mLineStarts[getLineForOffset(offset)]) * mAdvance;
+    }
+
+    @Override
+    public int getOffsetForHorizontal(int line, float horiz) {
+        int start = mLineStarts[line];
+        int max = mLineStarts[line + 1];
+        if (line != mLineCount - 1 && max > start) {
+            max--;
+        }
+        int offset = start + Math.round(horiz / mAdvance);
+        return offset < start ? start : offset > max ? max : offset;
+    }
+
+    @Override
+    public int getOffsetToLeftOf(int offset) {
+        return offset > 0 ? offset - 1 : 0;
+    }
+
+    @Override
+    public boolean isMeasurableByChar() {
+        return true;
+    }
+
+    @Override
+    public boolean getLineWidths(int line, float[] widths) {
+        Arrays.fill(widths, 0, mLineStarts[line + 1] - mLineStarts[line], mAdvance);
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package com.jaeger.library;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+/**
+ * Counts the frames that overran vsync while it is running, by comparing the frame times of
+ * consecutive Choreographer callbacks with the display's refresh interval.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class FrameOverrunMonitor implements Choreographer.FrameCallback {
+
+    private SelectionMetrics mMetrics;
+    private final long mFrameIntervalNanos;
+    private long mLastFrameNanos;
+    private boolean isRunning;
+
+    FrameOverrunMonitor(Context context) {
+        float refreshRate = ((WindowManager) context.getSystemService(Context.WINDOW_SERVICE))
+                .getDefaultDisplay().getRefreshRate();
+        mFrameIntervalNanos = (long) (1000000000L / (refreshRate > 0 ? refreshRate : 60f));
+    }
+
+    /**
+     * Starts counting into metrics, the monitor is shared by the selections of a process.
+     */
+    void start(SelectionMetrics metrics) {
+        mMetrics = metrics;
+        if (isRunning) {
+            return;
+        }
+        isRunning = true;
+        mLastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    void stop() {
+        if (isRunning) {
+            isRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!isRunning) {
+            return;
+        }
+        if (mLastFrameNanos != 0 && frameTimeNanos - mLastFrameNanos > mFrameIntervalNanos * 3 / 2) {
+            mMetrics.mVsyncOverrunCount++;
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
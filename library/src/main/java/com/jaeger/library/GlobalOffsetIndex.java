@@ -0,0 +1,297 @@
+package com.jaeger.library;
+
+import android.graphics.Rect;
+import android.text.GetChars;
+import android.text.TextUtils;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+
+/**
+ * Maps the readable TextViews of a container onto one global offset space, the texts joined
+ * by a line feed, in layout order. Buttons, editable views and views that are not visible are
+ * left out, their text is not content and their listeners belong to the app.
+ * <p>
+ * Global starts, view bounds and text area origins (in container coordinates) are kept in int
+ * arrays. Offset to view is a binary search. Position to view is a binary search on the tops of
+ * the shown views too while they are stacked, one below the other, as paragraphs are. Views
+ * side by side or in columns are hit tested over all bounds instead.
+ */
+class GlobalOffsetIndex {
+
+    static final char SEPARATOR = '\n';
+
+    private TextView[] mViews = new TextView[0];
+    private int mCount;
+    // mStarts[i] is the global offset of the first char of view i
+    private int[] mStarts = new int[0];
+    private int[] mLengths = new int[0];
+    private int[] mTextLefts = new int[0];
+    private int[] mTextTops = new int[0];
+    // view bounds, an empty rect for views that are not shown
+    private int[] mLefts = new int[0];
+    private int[] mTops = new int[0];
+    private int[] mRights = new int[0];
+    private int[] mBottoms = new int[0];
+    // the shown views top to bottom and their tops, ordered while isStacked
+    private int[] mShownViews = new int[0];
+    private int[] mShownTops = new int[0];
+    private int mShownCount;
+    private boolean isStacked;
+    private int mLength;
+
+    private final Rect mTempRect = new Rect();
+
+    /**
+     * Collects the visible, read-only TextViews under container, depth first.
+     */
+    void setViews(ViewGroup container) {
+        ArrayList<TextView> views = new ArrayList<TextView>();
+        collect(container, views);
+        mCount = views.size();
+        mViews = views.toArray(new TextView[mCount]);
+        mStarts = new int[mCount];
+        mLengths = new int[mCount];
+        mTextLefts = new int[mCount];
+        mTextTops = new int[mCount];
+        mLefts = new int[mCount];
+        mTops = new int[mCount];
+        mRights = new int[mCount];
+        mBottoms = new int[mCount];
+        mShownViews = new int[mCount];
+        mShownTops = new int[mCount];
+    }
+
+    private static void collect(ViewGroup group, ArrayList<TextView> out) {
+        for (int i = 0; i < group.getChildCount(); i++) {
+            View child = group.getChildAt(i);
+            if (child.getVisibility() != View.VISIBLE) {
+                continue;
+            }
+            if (child instanceof TextView) {
+                if (isReadable((TextView) child)) {
+                    out.add((TextView) child);
+                }
+            } else if (child instanceof ViewGroup) {
+                collect((ViewGroup) child, out);
+            }
+        }
+    }
+
+    /**
+     * @return false for buttons, check boxes and views that take text input
+     */
+    private static boolean isReadable(TextView view) {
+        return !(view instanceof Button) && !view.onCheckIsTextEditor() && view.getKeyListener() == null;
+    }
+
+    /**
+     * Re-reads text lengths and view positions, call it before a selection is shown or dragged.
+     */
+    void refresh(ViewGroup container) {
+        int start = 0;
+        for (int i = 0; i < mCount; i++) {
+            TextView view = mViews[i];
+            mStarts[i] = start;
+            mLengths[i] = view.getText().length();
+            start += mLengths[i] + 1;
+
+            mTempRect.set(0, 0, view.getWidth(), view.getHeight());
+            boolean isShown = view.getParent() != null && view.getWindowToken() != null && view.isShown();
+            if (isShown) {
+                container.offsetDescendantRectToMyCoords(view, mTempRect);
+            }
+            mTextLefts[i] = mTempRect.left + view.getTotalPaddingLeft() - view.getScrollX();
+            mTextTops[i] = mTempRect.top + view.getTotalPaddingTop() - view.getScrollY();
+            mLefts[i] = mTempRect.left;
+            mTops[i] = mTempRect.top;
+            mRights[i] = isShown ? mTempRect.right : mTempRect.left;
+            mBottoms[i] = isShown ? mTempRect.bottom : mTempRect.top;
+        }
+        mLength = mCount == 0 ? 0 : start - 1;
+
+        mShownCount = 0;
+        isStacked = true;
+        for (int i = 0; i < mCount; i++) {
+            if (mRights[i] <= mLefts[i] || mBottoms[i] <= mTops[i]) {
+                continue;
+            }
+            if (mShownCount > 0 && mTops[i] < mBottoms[mShownViews[mShownCount - 1]]) {
+                isStacked = false;
+            }
+            mShownViews[mShownCount] = i;
+            mShownTops[mShownCount] = mTops[i];
+            mShownCount++;
+        }
+    }
+
+    int getViewCount() {
+        return mCount;
+    }
+
+    TextView getView(int index) {
+        return mViews[index];
+    }
+
+    int indexOf(View view) {
+        for (int i = 0; i < mCount; i++) {
+            if (mViews[i] == view) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int length() {
+        return mLength;
+    }
+
+    int getStart(int index) {
+        return mStarts[index];
+    }
+
+    int getTextLength(int index) {
+        return mLengths[index];
+    }
+
+    int getTextLeft(int index) {
+        return mTextLefts[index];
+    }
+
+    int getTextTop(int index) {
+        return mTextTops[index];
+    }
+
+    /**
+     * @return the view holding global offset, a separator belongs to the view before it
+     */
+    int getViewForOffset(int offset) {
+        return floorIndex(mStarts, mCount, offset);
+    }
+
+    /**
+     * @return the view under (x, y) in container coordinates, or the one closest to it, -1 if
+     * no view is shown
+     */
+    int getViewAt(int x, int y) {
+        if (mShownCount == 0) {
+            return -1;
+        }
+        int first = 0;
+        int last = mShownCount - 1;
+        if (isStacked) {
+            // the view starting at or above y, or the first one, and the view below it
+            first = floorIndex(mShownTops, mShownCount, y);
+            last = Math.min(first + 1, last);
+        }
+        int closest = -1;
+        long closestDistance = Long.MAX_VALUE;
+        for (int k = first; k <= last; k++) {
+            int i = mShownViews[k];
+            int dx = x < mLefts[i] ? mLefts[i] - x : x >= mRights[i] ? x - mRights[i] + 1 : 0;
+            int dy = y < mTops[i] ? mTops[i] - y : y >= mBottoms[i] ? y - mBottoms[i] + 1 : 0;
+            if (dx == 0 && dy == 0) {
+                return i;
+            }
+            long distance = (long) dx * dx + (long) dy * dy;
+            if (distance < closestDistance) {
+                closest = i;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    private static int floorIndex(int[] values, int count, int value) {
+        int high = count, low = -1, guess;
+        while (high - low > 1) {
+            guess = (high + low) >>> 1;
+            if (values[guess] > value) {
+                high = guess;
+            } else {
+                low = guess;
+            }
+        }
+        return low < 0 ? 0 : low;
+    }
+
+    char charAt(int offset) {
+        int index = getViewForOffset(offset);
+        int local = offset - mStarts[index];
+        return local < mLengths[index] ? mViews[index].getText().charAt(local) : SEPARATOR;
+    }
+
+    /**
+     * @return a lazy view of the global range, nothing is copied until toString()
+     */
+    CharSequence subSequence(int start, int end) {
+        return new Content(this, start, end);
+    }
+
+    private static class Content implements CharSequence, GetChars {
+
+        private final GlobalOffsetIndex mIndex;
+        private final int mStart;
+        private final int mEnd;
+        private String mString;
+
+        Content(GlobalOffsetIndex index, int start, int end) {
+            mIndex = index;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        public int length() {
+            return mEnd - mStart;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+            }
+            return mIndex.charAt(mStart + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length() || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+            }
+            return new Content(mIndex, mStart + start, mStart + end);
+        }
+
+        @Override
+        public void getChars(int start, int end, char[] dest, int destoff) {
+            int offset = mStart + start;
+            int stop = mStart + end;
+            while (offset < stop) {
+                int index = mIndex.getViewForOffset(offset);
+                int local = offset - mIndex.mStarts[index];
+                int viewEnd = Math.min(mIndex.mLengths[index], stop - mIndex.mStarts[index]);
+                if (local < viewEnd) {
+                    TextUtils.getChars(mIndex.mViews[index].getText(), local, viewEnd, dest, destoff);
+                    destoff += viewEnd - local;
+                    offset += viewEnd - local;
+                } else {
+                    dest[destoff++] = SEPARATOR;
+                    offset++;
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            if (mString == null) {
+                char[] chars = new char[length()];
+                getChars(0, length(), chars, 0);
+                mString = new String(chars);
+            }
+            return mString;
+        }
+    }
+}
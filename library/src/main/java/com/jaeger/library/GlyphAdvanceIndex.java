@@ -0,0 +1,97 @@
+package com.jaeger.library;
+
+/**
+ * Per-line prefix sums of glyph advances for one {@link TextLayout}.
+ * <p>
+ * Each line is measured once with {@link TextLayout#getLineWidths(int, float[])} the first time
+ * it is hit, after that the horizontal position of an offset is an array read and the offset
+ * for a horizontal position is a binary search. Lines the layout can not measure char by char
+ * (bidi text, tabs, surrogates, ellipsis) are marked unsupported and callers fall back to the
+ * {@link TextLayout}. Layouts that are not {@link TextLayout#isMeasurableByChar() measurable by
+ * char} at all get no index.
+ */
+class GlyphAdvanceIndex {
+
+    private final TextLayout mLayout;
+    private final LineGeometryCache mLineCache;
+    // mAdvances[line][i] is the primary horizontal of lineStart + i, null until the line is hit
+    private final float[][] mAdvances;
+    private final boolean[] mUnsupported;
+    private float[] mWidths = new float[0];
+
+    GlyphAdvanceIndex(TextLayout layout, LineGeometryCache lineCache) {
+        mLayout = layout;
+        mLineCache = lineCache;
+        mAdvances = new float[lineCache.getLineCount()][];
+        mUnsupported = new boolean[lineCache.getLineCount()];
+    }
+
+    /**
+     * @return the cumulative advances of the line, or null if the line is not supported
+     */
+    float[] getLineAdvances(int line) {
+        if (mUnsupported[line]) {
+            return null;
+        }
+        if (mAdvances[line] == null && !buildLine(line)) {
+            mUnsupported[line] = true;
+            return null;
+        }
+        return mAdvances[line];
+    }
+
+    private boolean buildLine(int line) {
+        int start = mLineCache.getLineStart(line);
+        int length = mLineCache.getLineEnd(line) - start;
+        if (mWidths.length < length) {
+            mWidths = new float[length];
+        }
+        if (!mLayout.getLineWidths(line, mWidths)) {
+            return false;
+        }
+        float[] advances = new float[length + 1];
+        advances[0] = mLineCache.getLineLeft(line);
+        for (int i = 0; i < length; i++) {
+            advances[i + 1] = advances[i] + mWidths[i];
+        }
+        mAdvances[line] = advances;
+        return true;
+    }
+
+    /**
+     * Same idea as {@link TextLayout#getOffsetForHorizontal(int, float)}: the offset of the line
+     * closest to horiz, never the line end unless it is the last line.
+     *
+     * @param advances the result of {@link #getLineAdvances(int)} for line
+     */
+    int getOffsetForHorizontal(int line, float[] advances, float horiz) {
+        int start = mLineCache.getLineStart(line);
+        int max = advances.length - 1;
+        if (line != mLineCache.getLineCount() - 1 && max > 0) {
+            max--;
+        }
+
+        // last index whose advance is <= horiz
+        int low = 0, high = max, mid;
+        if (horiz < advances[0]) {
+            return start;
+        }
+        while (low < high) {
+            mid = (low + high + 1) >>> 1;
+            if (advances[mid] <= horiz) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (low == max) {
+            return start + max;
+        }
+        float toLow = horiz - advances[low];
+        float toHigh = advances[low + 1] - horiz;
+        if (toHigh < toLow || (toHigh == toLow && low + 1 == max)) {
+            return start + low + 1;
+        }
+        return start + low;
+    }
+}
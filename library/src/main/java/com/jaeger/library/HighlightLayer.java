@@ -0,0 +1,362 @@
+package com.jaeger.library;
+
+import android.graphics.Rect;
+import android.support.annotation.ColorInt;
+import android.text.Layout;
+import android.text.NoCopySpan;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextPaint;
+import android.text.style.CharacterStyle;
+import android.text.style.UpdateAppearance;
+import android.view.View;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * Highlights any number of ranges of a TextView, search matches or saved highlights, next to its
+ * normal selection.
+ * <p>
+ * The ranges live in an {@link IntervalIndex}, adding, removing and looking them up by offset
+ * cost O(log n). Spans exist only for the ranges on the visible lines plus half a screen above
+ * and below, and are updated on pre-draw once the TextView scrolled out of that area or the
+ * ranges changed. The span objects are pooled and their color is only drawn, so scrolling through
+ * a long document reflows nothing and allocates nothing once the pool is warm.
+ * <pre>
+ * HighlightLayer layer = new HighlightLayer(textView);
+ * for (int match : matches) {
+ *     layer.add(match, match + query.length(), color);
+ * }
+ * </pre>
+ * The TextView has to hold a Spannable, set with {@code setText(text, BufferType.SPANNABLE)}.
+ * The layer never replaces its text, a new buffer would hide the selection of a
+ * {@link SelectableTextHelper} on the same TextView. Main thread only.
+ */
+public class HighlightLayer {
+
+    // spans kept for reuse, more than a few screens of highlights are never visible at once
+    private static final int MAX_POOL_SIZE = 128;
+    // spans of a higher priority are applied first, so the selection's background wins where
+    // both cover a char
+    private static final int SPAN_FLAGS = Spanned.SPAN_EXCLUSIVE_EXCLUSIVE | (1 << Spanned.SPAN_PRIORITY_SHIFT);
+
+    /**
+     * One highlighted range.
+     */
+    public static final class Highlight {
+        private final int mId;
+        private final int mStart;
+        private final int mEnd;
+        private final int mColor;
+
+        Highlight(int id, int start, int end, int color) {
+            mId = id;
+            mStart = start;
+            mEnd = end;
+            mColor = color;
+        }
+
+        public int getId() {
+            return mId;
+        }
+
+        public int getStart() {
+            return mStart;
+        }
+
+        public int getEnd() {
+            return mEnd;
+        }
+
+        @ColorInt
+        public int getColor() {
+            return mColor;
+        }
+    }
+
+    /**
+     * Draws the background of a highlight. NoCopySpan keeps it out of copied and sliced text.
+     */
+    private static class HighlightSpan extends CharacterStyle implements UpdateAppearance, NoCopySpan {
+        int mColor;
+        int mStart;
+        int mEnd;
+        // the refresh that last found the highlight of this span on screen
+        int mGeneration;
+
+        @Override
+        public void updateDrawState(TextPaint tp) {
+            tp.bgColor = mColor;
+        }
+    }
+
+    private final TextView mTextView;
+    private final IntervalIndex<Highlight> mIndex = new IntervalIndex<Highlight>();
+    private final IdentityHashMap<Highlight, HighlightSpan> mAppliedSpans =
+            new IdentityHashMap<Highlight, HighlightSpan>();
+    private final ArrayList<HighlightSpan> mSpanPool = new ArrayList<HighlightSpan>();
+    private final ArrayList<Highlight> mTempHighlights = new ArrayList<Highlight>();
+    private final Rect mTempRect = new Rect();
+
+    private int mNextId = 1;
+    private Spannable mSpannable;
+    private Layout mLayout;
+    // the layout y range whose highlights have spans, valid while mSpannable and mLayout are current
+    private int mCoveredTop;
+    private int mCoveredBottom;
+    private boolean isDirty;
+    private int mGeneration;
+    private boolean isRegistered;
+
+    private final ViewTreeDispatcher.Client mViewTreeClient = new ViewTreeDispatcher.Client() {
+        @Override
+        public void onPreDraw() {
+            refresh();
+        }
+
+        @Override
+        public void onScrollChanged() {
+        }
+    };
+
+    /**
+     * @param textView a TextView whose text is, and stays, a Spannable; text set later as
+     *                 another type is not highlighted
+     */
+    public HighlightLayer(TextView textView) {
+        mTextView = textView;
+        mTextView.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+            @Override
+            public void onViewAttachedToWindow(View v) {
+                updateRegistration();
+            }
+
+            @Override
+            public void onViewDetachedFromWindow(View v) {
+                ViewTreeDispatcher.unregister(mViewTreeClient);
+                isRegistered = false;
+            }
+        });
+    }
+
+    /**
+     * Highlights start to end.
+     *
+     * @return the id of the highlight, for {@link #remove(int)}
+     */
+    public int add(int start, int end, @ColorInt int color) {
+        int id = mNextId++;
+        add(id, start, end, color);
+        return id;
+    }
+
+    /**
+     * Highlights start to end under a known id, replacing the highlight that had it. For
+     * highlights restored from storage, new ids are handed out above it.
+     *
+     * @throws IllegalStateException if the text of the TextView is not a Spannable
+     */
+    public void add(int id, int start, int end, @ColorInt int color) {
+        if (start < 0 || start >= end) {
+            throw new IllegalArgumentException("invalid range " + start + ", " + end);
+        }
+        if (!(mTextView.getText() instanceof Spannable)) {
+            throw new IllegalStateException("the TextView's text is not a Spannable, "
+                    + "set it with setText(text, BufferType.SPANNABLE)");
+        }
+        mIndex.add(id, start, end, new Highlight(id, start, end, color));
+        if (id >= mNextId) {
+            mNextId = id + 1;
+        }
+        invalidate();
+    }
+
+    /**
+     * @return false if there was no highlight with id
+     */
+    public boolean remove(int id) {
+        if (mIndex.remove(id) == null) {
+            return false;
+        }
+        invalidate();
+        return true;
+    }
+
+    public void clear() {
+        mIndex.clear();
+        invalidate();
+    }
+
+    public int size() {
+        return mIndex.size();
+    }
+
+    /**
+     * @return the highlight with id, or null
+     */
+    public Highlight get(int id) {
+        return mIndex.get(id);
+    }
+
+    /**
+     * @return the highlights that contain offset, ordered by start
+     */
+    public ArrayList<Highlight> getHighlightsAt(int offset) {
+        ArrayList<Highlight> highlights = new ArrayList<Highlight>();
+        mIndex.findAt(offset, highlights);
+        return highlights;
+    }
+
+    /**
+     * @return the highlights that overlap start to end, ordered by start
+     */
+    public ArrayList<Highlight> getHighlights(int start, int end) {
+        ArrayList<Highlight> highlights = new ArrayList<Highlight>();
+        mIndex.findOverlapping(start, end, highlights);
+        return highlights;
+    }
+
+    /**
+     * @return all highlights, ordered by start
+     */
+    public ArrayList<Highlight> getHighlights() {
+        ArrayList<Highlight> highlights = new ArrayList<Highlight>(mIndex.size());
+        mIndex.getAll(highlights);
+        return highlights;
+    }
+
+    private void invalidate() {
+        isDirty = true;
+        updateRegistration();
+        mTextView.invalidate();
+    }
+
+    /**
+     * Listens to pre-draw while there is something to draw or to take away.
+     */
+    private void updateRegistration() {
+        boolean needed = mIndex.size() > 0 || !mAppliedSpans.isEmpty();
+        if (needed && !isRegistered && mTextView.getWindowToken() != null) {
+            ViewTreeDispatcher.register(mTextView, mViewTreeClient);
+            isRegistered = true;
+        } else if (!needed && isRegistered) {
+            ViewTreeDispatcher.unregister(mViewTreeClient);
+            isRegistered = false;
+        }
+    }
+
+    /**
+     * Package-private for tests, called on pre-draw otherwise.
+     */
+    void refresh() {
+        CharSequence text = mTextView.getText();
+        if (text != mSpannable) {
+            // setText() dropped the spans together with the old buffer
+            recycleAll();
+            mSpannable = null;
+            isDirty = true;
+        }
+        Layout layout = mTextView.getLayout();
+        if (layout == null || !mTextView.getLocalVisibleRect(mTempRect)) {
+            return;
+        }
+        // the local visible rect includes the scroll offset, like the layout coordinates
+        int visibleTop = mTempRect.top - mTextView.getTotalPaddingTop();
+        int visibleBottom = mTempRect.bottom - mTextView.getTotalPaddingTop();
+        if (!isDirty && layout == mLayout && visibleTop >= mCoveredTop && visibleBottom <= mCoveredBottom) {
+            return;
+        }
+        if (mIndex.size() == 0) {
+            recycleAll();
+            isDirty = false;
+            updateRegistration();
+            return;
+        }
+        if (!(text instanceof Spannable)) {
+            // set as another type after the highlights were added, nothing to draw them on
+            return;
+        }
+        mSpannable = (Spannable) text;
+        mLayout = layout;
+        isDirty = false;
+
+        int margin = (visibleBottom - visibleTop) / 2;
+        mCoveredTop = visibleTop - margin;
+        mCoveredBottom = visibleBottom + margin;
+        int firstLine = layout.getLineForVertical(Math.max(0, mCoveredTop));
+        int lastLine = layout.getLineForVertical(Math.max(0, mCoveredBottom));
+        int start = layout.getLineStart(firstLine);
+        int end = Math.min(layout.getLineEnd(lastLine), mSpannable.length());
+        apply(start, end);
+    }
+
+    /**
+     * Gives the highlights overlapping start to end a span each, moving or reusing the spans of
+     * the last refresh and taking away the ones of highlights that are not there anymore.
+     */
+    private void apply(int start, int end) {
+        int generation = ++mGeneration;
+        mTempHighlights.clear();
+        mIndex.findOverlapping(start, end, mTempHighlights);
+        for (int i = 0; i < mTempHighlights.size(); i++) {
+            Highlight highlight = mTempHighlights.get(i);
+            int spanStart = Math.max(highlight.mStart, start);
+            int spanEnd = Math.min(highlight.mEnd, end);
+            if (spanStart >= spanEnd) {
+                continue;
+            }
+            HighlightSpan span = mAppliedSpans.get(highlight);
+            if (span == null) {
+                span = obtainSpan();
+                span.mColor = highlight.mColor;
+                mAppliedSpans.put(highlight, span);
+            }
+            span.mGeneration = generation;
+            if (span.mStart != spanStart || span.mEnd != spanEnd || mSpannable.getSpanStart(span) < 0) {
+                span.mStart = spanStart;
+                span.mEnd = spanEnd;
+                // setSpan() on an attached span moves it with a single span change notification
+                mSpannable.setSpan(span, spanStart, spanEnd, SPAN_FLAGS);
+            }
+        }
+        mTempHighlights.clear();
+
+        Iterator<HighlightSpan> iterator = mAppliedSpans.values().iterator();
+        while (iterator.hasNext()) {
+            HighlightSpan span = iterator.next();
+            if (span.mGeneration != generation) {
+                iterator.remove();
+                mSpannable.removeSpan(span);
+                recycleSpan(span);
+            }
+        }
+    }
+
+    private void recycleAll() {
+        for (HighlightSpan span : mAppliedSpans.values()) {
+            if (mSpannable != null) {
+                mSpannable.removeSpan(span);
+            }
+            recycleSpan(span);
+        }
+        mAppliedSpans.clear();
+        mCoveredTop = 0;
+        mCoveredBottom = 0;
+    }
+
+    private HighlightSpan obtainSpan() {
+        int size = mSpanPool.size();
+        return size > 0 ? mSpanPool.remove(size - 1) : new HighlightSpan();
+    }
+
+    private void recycleSpan(HighlightSpan span) {
+        span.mStart = -1;
+        span.mEnd = -1;
+        if (mSpanPool.size() < MAX_POOL_SIZE) {
+            mSpanPool.add(span);
+        }
+    }
+}
@@ -0,0 +1,521 @@
+package com.jaeger.library;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps highlights on local storage, keyed by a fingerprint of the text they belong to.
+ * <p>
+ * The file is a 16 byte header followed by fixed size 32 byte records. The first records form
+ * a region sorted by fingerprint and id, written by the last compaction. They are read in place
+ * from a memory mapping, and the highlights of one text are found with a binary search. The
+ * records after them are an append-only log of puts and removes, loaded into memory when the
+ * store is opened and short because compaction merges it into the sorted region in the
+ * background once it grows. Loading the highlights of a text therefore costs O(log n + matches)
+ * and never parses the whole file.
+ * <p>
+ * Every record carries a checksum, a torn record at the end of the file left by a crash is
+ * dropped when the store is opened. Thread safe, the file should be used by one store at a time.
+ */
+public class HighlightStore implements Closeable {
+
+    private static final int MAGIC = 0x53484c53;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 32;
+
+    private static final int TYPE_PUT = 1;
+    private static final int TYPE_REMOVE = 2;
+
+    // compaction starts when the log is this long and at least a quarter of the sorted region
+    private static final int MIN_LOG_SIZE_TO_COMPACT = 256;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static Executor sExecutor;
+
+    private static final class Record {
+        final long mFingerprint;
+        final int mId;
+        final int mStart;
+        final int mEnd;
+        final int mColor;
+        final int mType;
+
+        Record(long fingerprint, int id, int start, int end, int color, int type) {
+            mFingerprint = fingerprint;
+            mId = id;
+            mStart = start;
+            mEnd = end;
+            mColor = color;
+            mType = type;
+        }
+    }
+
+    private static final Comparator<Record> RECORD_ORDER = new Comparator<Record>() {
+        @Override
+        public int compare(Record a, Record b) {
+            return compareKeys(a.mFingerprint, a.mId, b.mFingerprint, b.mId);
+        }
+    };
+
+    private final File mFile;
+    private final Executor mExecutor;
+    // held by a compaction from its snapshot of the log until the file is replaced, taken
+    // before the store's own lock
+    private final Object mCompactLock = new Object();
+
+    private RandomAccessFile mRandomAccessFile;
+    private FileChannel mChannel;
+    // header and sorted region, read only
+    private MappedByteBuffer mSortedRegion;
+    private int mSortedCount;
+    // the log after the sorted region in file order, and the same records grouped by text
+    private ArrayList<Record> mLog = new ArrayList<Record>();
+    private HashMap<Long, ArrayList<Record>> mLogByFingerprint = new HashMap<Long, ArrayList<Record>>();
+    private final ByteBuffer mRecordBuffer = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+    private boolean isCompacting;
+    private boolean isClosed;
+
+    private final Runnable mCompactRunnable = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                compact();
+            } catch (IOException e) {
+                // the log stays as it is and is still complete, the next put tries again
+            } finally {
+                synchronized (HighlightStore.this) {
+                    isCompacting = false;
+                }
+            }
+        }
+    };
+
+    /**
+     * Opens file, creating it if needed, and compacts it on a shared background thread.
+     */
+    public HighlightStore(File file) throws IOException {
+        this(file, getDefaultExecutor());
+    }
+
+    /**
+     * Opens file, creating it if needed, and compacts it on executor.
+     */
+    public HighlightStore(File file, Executor executor) throws IOException {
+        mFile = file;
+        mExecutor = executor;
+        open();
+    }
+
+    /**
+     * @return a 64 bit FNV-1a hash of the chars of text, equal texts of any CharSequence type
+     * have equal fingerprints
+     */
+    public static long fingerprint(CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xff)) * 0x100000001b3L;
+            hash = (hash ^ (c >>> 8)) * 0x100000001b3L;
+        }
+        return hash ^ text.length();
+    }
+
+    /**
+     * Stores a highlight of the text with fingerprint, replacing the one with the same id.
+     */
+    public synchronized void put(long fingerprint, HighlightLayer.Highlight highlight) throws IOException {
+        append(new Record(fingerprint, highlight.getId(), highlight.getStart(), highlight.getEnd(),
+                highlight.getColor(), TYPE_PUT));
+    }
+
+    /**
+     * Removes the highlight with id of the text with fingerprint, if it is stored.
+     */
+    public synchronized void remove(long fingerprint, int id) throws IOException {
+        append(new Record(fingerprint, id, 0, 0, 0, TYPE_REMOVE));
+    }
+
+    /**
+     * @return the stored highlights of the text with fingerprint, ordered by id
+     */
+    public synchronized List<HighlightLayer.Highlight> load(long fingerprint) {
+        checkOpen();
+        LinkedHashMap<Integer, HighlightLayer.Highlight> highlights =
+                new LinkedHashMap<Integer, HighlightLayer.Highlight>();
+        for (int i = findFirst(fingerprint); i < mSortedCount; i++) {
+            int position = HEADER_SIZE + i * RECORD_SIZE;
+            if (mSortedRegion.getLong(position) != fingerprint) {
+                break;
+            }
+            int id = mSortedRegion.getInt(position + 8);
+            highlights.put(id, new HighlightLayer.Highlight(id, mSortedRegion.getInt(position + 12),
+                    mSortedRegion.getInt(position + 16), mSortedRegion.getInt(position + 20)));
+        }
+        ArrayList<Record> log = mLogByFingerprint.get(fingerprint);
+        if (log != null) {
+            for (Record record : log) {
+                if (record.mType == TYPE_REMOVE) {
+                    highlights.remove(record.mId);
+                } else {
+                    highlights.put(record.mId, new HighlightLayer.Highlight(record.mId, record.mStart,
+                            record.mEnd, record.mColor));
+                }
+            }
+        }
+        ArrayList<HighlightLayer.Highlight> result = new ArrayList<HighlightLayer.Highlight>(highlights.values());
+        if (log != null) {
+            // ids first stored in the log come after the sorted ones
+            Collections.sort(result, new Comparator<HighlightLayer.Highlight>() {
+                @Override
+                public int compare(HighlightLayer.Highlight a, HighlightLayer.Highlight b) {
+                    return a.getId() < b.getId() ? -1 : (a.getId() == b.getId() ? 0 : 1);
+                }
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Merges the log into the sorted region and drops removed and replaced highlights. Runs by
+     * itself in the background, puts and loads can go on while it writes. A call while another
+     * compaction runs waits for it to finish.
+     */
+    public void compact() throws IOException {
+        synchronized (mCompactLock) {
+            compactLocked();
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        MappedByteBuffer sortedRegion;
+        int sortedCount;
+        ArrayList<Record> log;
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            sortedRegion = mSortedRegion;
+            sortedCount = mSortedCount;
+            log = new ArrayList<Record>(mLog);
+        }
+
+        File compactFile = File.createTempFile(mFile.getName(), ".compact", mFile.getAbsoluteFile().getParentFile());
+        RandomAccessFile compactRandomAccessFile = new RandomAccessFile(compactFile, "rw");
+        boolean isCommitted = false;
+        try {
+            FileChannel compactChannel = compactRandomAccessFile.getChannel();
+            compactChannel.truncate(0);
+            int count = writeMerged(compactChannel, sortedRegion, sortedCount, log);
+
+            synchronized (this) {
+                if (isClosed) {
+                    return;
+                }
+                // puts and removes that came in while the merge was written
+                ArrayList<Record> newLog = new ArrayList<Record>(mLog.subList(log.size(), mLog.size()));
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * Math.max(1, newLog.size()));
+                for (Record record : newLog) {
+                    writeRecord(buffer, record);
+                }
+                buffer.flip();
+                compactChannel.position(HEADER_SIZE + (long) count * RECORD_SIZE);
+                writeFully(compactChannel, buffer);
+                compactChannel.force(true);
+                compactRandomAccessFile.close();
+
+                mRandomAccessFile.close();
+                if (!replaceFile(compactFile)) {
+                    // the file is unchanged, the store goes on with it and its log
+                    open();
+                    throw new IOException("can not replace " + mFile);
+                }
+                isCommitted = true;
+                open();
+            }
+        } finally {
+            if (!isCommitted) {
+                compactRandomAccessFile.close();
+                compactFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Moves compactFile over the store's file, package-private so tests can make it fail.
+     *
+     * @return false if the file could not be replaced
+     */
+    boolean replaceFile(File compactFile) {
+        return compactFile.renameTo(mFile);
+    }
+
+    /**
+     * @return the number of records in the file, for tests
+     */
+    synchronized int getRecordCount() {
+        return mSortedCount + mLog.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (isClosed) {
+            return;
+        }
+        isClosed = true;
+        mChannel.force(false);
+        mRandomAccessFile.close();
+        mSortedRegion = null;
+        mLog = new ArrayList<Record>();
+        mLogByFingerprint = new HashMap<Long, ArrayList<Record>>();
+    }
+
+    /**
+     * Maps the file and reads its log, a new or unreadable file is started from scratch.
+     */
+    private void open() throws IOException {
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        mChannel = mRandomAccessFile.getChannel();
+        long length = mChannel.size();
+        mLog = new ArrayList<Record>();
+        mLogByFingerprint = new HashMap<Long, ArrayList<Record>>();
+
+        MappedByteBuffer mapped = length >= HEADER_SIZE
+                ? mChannel.map(FileChannel.MapMode.READ_ONLY, 0, length) : null;
+        if (mapped == null || mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION
+                || HEADER_SIZE + (long) mapped.getInt(8) * RECORD_SIZE > length) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            writeHeader(header, 0);
+            header.flip();
+            mChannel.truncate(0);
+            mChannel.position(0);
+            writeFully(mChannel, header);
+            mSortedRegion = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            mSortedCount = 0;
+            return;
+        }
+        mSortedRegion = mapped;
+        mSortedCount = mapped.getInt(8);
+
+        long position = HEADER_SIZE + (long) mSortedCount * RECORD_SIZE;
+        while (position + RECORD_SIZE <= length) {
+            Record record = readRecord(mapped, (int) position);
+            if (record == null) {
+                break;
+            }
+            addToLog(record);
+            position += RECORD_SIZE;
+        }
+        if (position != length) {
+            // a torn or corrupt record, everything after it is lost anyway
+            mChannel.truncate(position);
+        }
+        mChannel.position(position);
+    }
+
+    private void append(Record record) throws IOException {
+        checkOpen();
+        mRecordBuffer.clear();
+        writeRecord(mRecordBuffer, record);
+        mRecordBuffer.flip();
+        writeFully(mChannel, mRecordBuffer);
+        addToLog(record);
+        if (!isCompacting && mLog.size() >= Math.max(MIN_LOG_SIZE_TO_COMPACT, mSortedCount / 4)) {
+            isCompacting = true;
+            mExecutor.execute(mCompactRunnable);
+        }
+    }
+
+    private void addToLog(Record record) {
+        mLog.add(record);
+        ArrayList<Record> records = mLogByFingerprint.get(record.mFingerprint);
+        if (records == null) {
+            records = new ArrayList<Record>(4);
+            mLogByFingerprint.put(record.mFingerprint, records);
+        }
+        records.add(record);
+    }
+
+    /**
+     * @return the index of the first sorted record with fingerprint or a larger one
+     */
+    private int findFirst(long fingerprint) {
+        int low = 0;
+        int high = mSortedCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mSortedRegion.getLong(HEADER_SIZE + middle * RECORD_SIZE) < fingerprint) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Writes the header and the sorted records of sortedRegion with log applied to channel.
+     *
+     * @return the number of records written
+     */
+    private static int writeMerged(FileChannel channel, ByteBuffer sortedRegion, int sortedCount,
+                                   List<Record> log) throws IOException {
+        // the last record of each key wins, removes only take away
+        HashMap<Long, HashMap<Integer, Record>> latest = new HashMap<Long, HashMap<Integer, Record>>();
+        for (Record record : log) {
+            HashMap<Integer, Record> byId = latest.get(record.mFingerprint);
+            if (byId == null) {
+                byId = new HashMap<Integer, Record>();
+                latest.put(record.mFingerprint, byId);
+            }
+            byId.put(record.mId, record);
+        }
+        ArrayList<Record> puts = new ArrayList<Record>();
+        for (HashMap<Integer, Record> byId : latest.values()) {
+            for (Record record : byId.values()) {
+                if (record.mType == TYPE_PUT) {
+                    puts.add(record);
+                }
+            }
+        }
+        Collections.sort(puts, RECORD_ORDER);
+
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        channel.position(HEADER_SIZE);
+        int count = 0;
+        int putIndex = 0;
+        for (int i = 0; i < sortedCount; i++) {
+            int position = HEADER_SIZE + i * RECORD_SIZE;
+            long fingerprint = sortedRegion.getLong(position);
+            int id = sortedRegion.getInt(position + 8);
+            while (putIndex < puts.size() && compareKeys(puts.get(putIndex).mFingerprint,
+                    puts.get(putIndex).mId, fingerprint, id) < 0) {
+                count += writeBuffered(channel, buffer, puts.get(putIndex++));
+            }
+            HashMap<Integer, Record> byId = latest.get(fingerprint);
+            if (byId != null && byId.containsKey(id)) {
+                // replaced or removed, a replacement is written from puts
+                continue;
+            }
+            count += writeBuffered(channel, buffer, new Record(fingerprint, id, sortedRegion.getInt(position + 12),
+                    sortedRegion.getInt(position + 16), sortedRegion.getInt(position + 20), TYPE_PUT));
+        }
+        while (putIndex < puts.size()) {
+            count += writeBuffered(channel, buffer, puts.get(putIndex++));
+        }
+        buffer.flip();
+        writeFully(channel, buffer);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        writeHeader(header, count);
+        header.flip();
+        channel.position(0);
+        writeFully(channel, header);
+        return count;
+    }
+
+    private static int writeBuffered(FileChannel channel, ByteBuffer buffer, Record record) throws IOException {
+        if (buffer.remaining() < RECORD_SIZE) {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+        writeRecord(buffer, record);
+        return 1;
+    }
+
+    private static void writeHeader(ByteBuffer buffer, int sortedCount) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(sortedCount);
+        buffer.putInt(0);
+    }
+
+    private static void writeRecord(ByteBuffer buffer, Record record) {
+        buffer.putLong(record.mFingerprint);
+        buffer.putInt(record.mId);
+        buffer.putInt(record.mStart);
+        buffer.putInt(record.mEnd);
+        buffer.putInt(record.mColor);
+        buffer.putInt(record.mType);
+        buffer.putInt(checksum(record.mFingerprint, record.mId, record.mStart, record.mEnd, record.mColor,
+                record.mType));
+    }
+
+    /**
+     * @return the record at position, or null if its checksum does not match
+     */
+    private static Record readRecord(ByteBuffer buffer, int position) {
+        long fingerprint = buffer.getLong(position);
+        int id = buffer.getInt(position + 8);
+        int start = buffer.getInt(position + 12);
+        int end = buffer.getInt(position + 16);
+        int color = buffer.getInt(position + 20);
+        int type = buffer.getInt(position + 24);
+        if ((type != TYPE_PUT && type != TYPE_REMOVE)
+                || buffer.getInt(position + 28) != checksum(fingerprint, id, start, end, color, type)) {
+            return null;
+        }
+        return new Record(fingerprint, id, start, end, color, type);
+    }
+
+    private static int checksum(long fingerprint, int id, int start, int end, int color, int type) {
+        int hash = 0x811c9dc5;
+        hash = (hash ^ (int) fingerprint) * 0x01000193;
+        hash = (hash ^ (int) (fingerprint >>> 32)) * 0x01000193;
+        hash = (hash ^ id) * 0x01000193;
+        hash = (hash ^ start) * 0x01000193;
+        hash = (hash ^ end) * 0x01000193;
+        hash = (hash ^ color) * 0x01000193;
+        return (hash ^ type) * 0x01000193;
+    }
+
+    private static int compareKeys(long fingerprintA, int idA, long fingerprintB, int idB) {
+        if (fingerprintA != fingerprintB) {
+            return fingerprintA < fingerprintB ? -1 : 1;
+        }
+        return idA < idB ? -1 : (idA == idB ? 0 : 1);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void checkOpen() {
+        if (isClosed) {
+            throw new IllegalStateException("HighlightStore is closed");
+        }
+    }
+
+    private static synchronized Executor getDefaultExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "SelectableText-highlights");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
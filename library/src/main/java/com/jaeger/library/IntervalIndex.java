@@ -0,0 +1,230 @@
+package com.jaeger.library;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A set of half open text ranges with an id each, for overlap queries on many thousands of
+ * highlights.
+ * <p>
+ * The ranges are kept in a treap ordered by start and id, every node also holds the largest end
+ * of its subtree. Adding and removing cost O(log n) expected, finding the k ranges that contain
+ * an offset or overlap a range costs O(log n + k): subtrees that end before the query or start
+ * after it are skipped. Not thread safe.
+ */
+class IntervalIndex<T> {
+
+    private static final class Node<T> {
+        final int mId;
+        final int mStart;
+        final int mEnd;
+        final T mValue;
+        final int mPriority;
+        int mMaxEnd;
+        Node<T> mLeft;
+        Node<T> mRight;
+
+        Node(int id, int start, int end, T value, int priority) {
+            mId = id;
+            mStart = start;
+            mEnd = end;
+            mValue = value;
+            mPriority = priority;
+            mMaxEnd = end;
+        }
+    }
+
+    private final HashMap<Integer, Node<T>> mNodes = new HashMap<Integer, Node<T>>();
+    private Node<T> mRoot;
+    // xorshift state for the node priorities, a fixed seed keeps the shape reproducible
+    private int mSeed = 0x2545F491;
+
+    int size() {
+        return mNodes.size();
+    }
+
+    boolean contains(int id) {
+        return mNodes.containsKey(id);
+    }
+
+    /**
+     * @return the value of id, or null
+     */
+    T get(int id) {
+        Node<T> node = mNodes.get(id);
+        return node == null ? null : node.mValue;
+    }
+
+    /**
+     * Adds [start, end) with id, replacing the range that had id before. An empty range contains
+     * no offset and overlaps nothing, it is only returned by {@link #getAll(List)}.
+     */
+    void add(int id, int start, int end, T value) {
+        if (start > end) {
+            throw new IllegalArgumentException("start " + start + " > end " + end);
+        }
+        remove(id);
+        Node<T> node = new Node<T>(id, start, end, value, nextPriority());
+        mNodes.put(id, node);
+        mRoot = insert(mRoot, node);
+    }
+
+    /**
+     * @return the value of the removed range, or null if there was none with id
+     */
+    T remove(int id) {
+        Node<T> node = mNodes.remove(id);
+        if (node == null) {
+            return null;
+        }
+        mRoot = delete(mRoot, node);
+        return node.mValue;
+    }
+
+    void clear() {
+        mNodes.clear();
+        mRoot = null;
+    }
+
+    /**
+     * Adds the values of the ranges with start &lt;= offset &lt; end to out, ordered by start.
+     */
+    void findAt(int offset, List<T> out) {
+        collect(mRoot, offset, offset + 1, out);
+    }
+
+    /**
+     * Adds the values of the ranges that overlap [start, end) to out, ordered by start.
+     */
+    void findOverlapping(int start, int end, List<T> out) {
+        if (start < end) {
+            collect(mRoot, start, end, out);
+        }
+    }
+
+    /**
+     * Adds all values to out, ordered by start.
+     */
+    void getAll(List<T> out) {
+        collectAll(mRoot, out);
+    }
+
+    private void collectAll(Node<T> node, List<T> out) {
+        if (node != null) {
+            collectAll(node.mLeft, out);
+            out.add(node.mValue);
+            collectAll(node.mRight, out);
+        }
+    }
+
+    private void collect(Node<T> node, int start, int end, List<T> out) {
+        // nothing in this subtree ends after start
+        if (node == null || node.mMaxEnd <= start) {
+            return;
+        }
+        collect(node.mLeft, start, end, out);
+        if (node.mStart >= end) {
+            // this node and its right subtree start too late
+            return;
+        }
+        if (node.mEnd > start && node.mEnd > node.mStart) {
+            out.add(node.mValue);
+        }
+        collect(node.mRight, start, end, out);
+    }
+
+    private Node<T> insert(Node<T> root, Node<T> node) {
+        if (root == null) {
+            return node;
+        }
+        if (compare(node, root) < 0) {
+            root.mLeft = insert(root.mLeft, node);
+            if (root.mLeft.mPriority > root.mPriority) {
+                root = rotateRight(root);
+            }
+        } else {
+            root.mRight = insert(root.mRight, node);
+            if (root.mRight.mPriority > root.mPriority) {
+                root = rotateLeft(root);
+            }
+        }
+        update(root);
+        return root;
+    }
+
+    private Node<T> delete(Node<T> root, Node<T> node) {
+        if (root == null) {
+            return null;
+        }
+        if (root == node) {
+            return merge(root.mLeft, root.mRight);
+        }
+        if (compare(node, root) < 0) {
+            root.mLeft = delete(root.mLeft, node);
+        } else {
+            root.mRight = delete(root.mRight, node);
+        }
+        update(root);
+        return root;
+    }
+
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.mPriority > right.mPriority) {
+            left.mRight = merge(left.mRight, right);
+            update(left);
+            return left;
+        }
+        right.mLeft = merge(left, right.mLeft);
+        update(right);
+        return right;
+    }
+
+    private Node<T> rotateRight(Node<T> node) {
+        Node<T> left = node.mLeft;
+        node.mLeft = left.mRight;
+        left.mRight = node;
+        update(node);
+        update(left);
+        return left;
+    }
+
+    private Node<T> rotateLeft(Node<T> node) {
+        Node<T> right = node.mRight;
+        node.mRight = right.mLeft;
+        right.mLeft = node;
+        update(node);
+        update(right);
+        return right;
+    }
+
+    private static <T> void update(Node<T> node) {
+        int maxEnd = node.mEnd;
+        if (node.mLeft != null && node.mLeft.mMaxEnd > maxEnd) {
+            maxEnd = node.mLeft.mMaxEnd;
+        }
+        if (node.mRight != null && node.mRight.mMaxEnd > maxEnd) {
+            maxEnd = node.mRight.mMaxEnd;
+        }
+        node.mMaxEnd = maxEnd;
+    }
+
+    private static <T> int compare(Node<T> a, Node<T> b) {
+        if (a.mStart != b.mStart) {
+            return a.mStart < b.mStart ? -1 : 1;
+        }
+        return a.mId < b.mId ? -1 : (a.mId == b.mId ? 0 : 1);
+    }
+
+    private int nextPriority() {
+        mSeed ^= mSeed << 13;
+        mSeed ^= mSeed >>> 17;
+        mSeed ^= mSeed << 5;
+        return mSeed;
+    }
+}
@@ -0,0 +1,116 @@
+package com.jaeger.library;
+
+import android.text.Editable;
+import android.text.NoCopySpan;
+import android.text.SpanWatcher;
+import android.text.Spannable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.text.style.MetricAffectingSpan;
+import android.text.style.ParagraphStyle;
+import android.widget.TextView;
+
+/**
+ * Invalidates a {@link LineGeometryCache} when its text changes in a way the cache can not see.
+ * A DynamicLayout reflows in place, so an edit that keeps the length and the line count, or a
+ * span that changes the width of glyphs or the alignment of a paragraph, leaves the layout, its
+ * line count and its text length as they were. setText() is seen by the cache, the TextView
+ * builds a new layout for a new buffer.
+ * <p>
+ * The watcher is attached to the text as a span, like the TextView's own watcher, where the
+ * selection already puts its spans on the text. Where the text has to stay untouched it is
+ * added to the TextView with addTextChangedListener() instead, only while the text is an
+ * Editable: a TextView with a TextWatcher copies every text set later into an Editable, and a
+ * text that is not one never changes under its layout. Spans that only change how glyphs are
+ * drawn, like the selection background, are ignored.
+ */
+class LineCacheInvalidator implements TextWatcher, SpanWatcher, NoCopySpan {
+
+    private final LineGeometryCache mLineCache;
+    private Spannable mSpannable;
+    private TextView mTextView;
+
+    LineCacheInvalidator(LineGeometryCache lineCache) {
+        mLineCache = lineCache;
+    }
+
+    /**
+     * Watches text instead of the text watched before, nothing if it is null or can not change.
+     */
+    void watch(CharSequence text) {
+        if (text == mSpannable) {
+            return;
+        }
+        if (mSpannable != null) {
+            mSpannable.removeSpan(this);
+            mSpannable = null;
+        }
+        if (text instanceof Spannable) {
+            mSpannable = (Spannable) text;
+            mSpannable.setSpan(this, 0, mSpannable.length(), Spanned.SPAN_INCLUSIVE_INCLUSIVE);
+        }
+    }
+
+    /**
+     * Watches the edits of the text of textView with a TextWatcher instead of the TextView
+     * watched before, nothing if it is null or its text is not an Editable. Span changes are not
+     * seen this way.
+     */
+    void watchEdits(TextView textView) {
+        if (textView != null && !(textView.getText() instanceof Editable)) {
+            textView = null;
+        }
+        if (textView == mTextView) {
+            return;
+        }
+        if (mTextView != null) {
+            mTextView.removeTextChangedListener(this);
+        }
+        mTextView = textView;
+        if (mTextView != null) {
+            mTextView.addTextChangedListener(this);
+        }
+    }
+
+    /**
+     * Stops watching the text and the TextView.
+     */
+    void unwatch() {
+        watch(null);
+        watchEdits(null);
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        mLineCache.invalidate();
+    }
+
+    @Override
+    public void onSpanAdded(Spannable text, Object what, int start, int end) {
+        onSpanChanged(what);
+    }
+
+    @Override
+    public void onSpanRemoved(Spannable text, Object what, int start, int end) {
+        onSpanChanged(what);
+    }
+
+    @Override
+    public void onSpanChanged(Spannable text, Object what, int ostart, int oend, int nstart, int nend) {
+        onSpanChanged(what);
+    }
+
+    private void onSpanChanged(Object what) {
+        if (what instanceof MetricAffectingSpan || what instanceof ParagraphStyle) {
+            mLineCache.invalidate();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.jaeger.library;
+
+/**
+ * Caches the per-line geometry of one {@link TextLayout} instance in primitive arrays, so that
+ * handle and popup placement does not have to query the layout again on every move event.
+ * <p>
+ * The cache is bound to a layout with {@link #obtain(TextLayout)}, or with
+ * {@code AndroidTextLayout.obtain()} for the Layout of a TextView, and rebuilt automatically
+ * when it is handed a different layout, or when the line count or text length of the same
+ * layout changes (DynamicLayout reflows in place). Same length edits and span changes are not
+ * visible to it, a {@link LineCacheInvalidator} watching the text calls {@link #invalidate()}.
+ * <p>
+ * With {@link #setAdvanceIndexEnabled(boolean)} horizontal queries go through a
+ * {@link GlyphAdvanceIndex} built lazily for the lines that are touched.
+ */
+class LineGeometryCache {
+
+    private static final int[] EMPTY_INTS = new int[0];
+    private static final float[] EMPTY_FLOATS = new float[0];
+
+    private TextLayout mLayout;
+    private int mLineCount;
+    private int mTextLength;
+
+    // mLineTops[line + 1] is the bottom of line, the same way Layout.getLineBottom() works
+    private int[] mLineTops = EMPTY_INTS;
+    private int[] mLineBottoms = EMPTY_INTS;
+    // mLineStarts[mLineCount] is the end of the text
+    private int[] mLineStarts = EMPTY_INTS;
+    // primary horizontal of each line start, filled lazily because it has to measure the line
+    private float[] mLineLefts = EMPTY_FLOATS;
+    private boolean[] mLineLeftValid = new boolean[0];
+    private float[] mLineRights = EMPTY_FLOATS;
+    private boolean[] mLineRightValid = new boolean[0];
+
+    private boolean isAdvanceIndexEnabled;
+    private GlyphAdvanceIndex mAdvanceIndex;
+
+    /**
+     * Enables the per-line glyph advance index for horizontal queries. The index sums up the
+     * advances of single chars, it is not used for layouts that are not
+     * {@link TextLayout#isMeasurableByChar() measurable by char}.
+     */
+    void setAdvanceIndexEnabled(boolean enabled) {
+        if (isAdvanceIndexEnabled != enabled) {
+            isAdvanceIndexEnabled = enabled;
+            mAdvanceIndex = null;
+            if (enabled && mLayout != null) {
+                mAdvanceIndex = createAdvanceIndex(mLayout);
+            }
+        }
+    }
+
+    private GlyphAdvanceIndex createAdvanceIndex(TextLayout layout) {
+        return layout.isMeasurableByChar() ? new GlyphAdvanceIndex(layout, this) : null;
+    }
+
+    /**
+     * @return whether horizontal queries go through the glyph advance index
+     */
+    boolean isAdvanceIndexUsed() {
+        return mAdvanceIndex != null;
+    }
+
+    /**
+     * Binds the cache to the given layout, rebuilding it if the layout changed.
+     *
+     * @return this cache, or null if the layout is null
+     */
+    LineGeometryCache obtain(TextLayout layout) {
+        if (layout == null) {
+            return null;
+        }
+        if (layout != mLayout
+                || layout.getLineCount() != mLineCount
+                || layout.getText().length() != mTextLength) {
+            rebuild(layout);
+        }
+        return this;
+    }
+
+    /**
+     * Drops the cached geometry, the next {@link #obtain(TextLayout)} will rebuild it.
+     */
+    void invalidate() {
+        mLayout = null;
+        mAdvanceIndex = null;
+        mLineCount = 0;
+        mTextLength = 0;
+    }
+
+    TextLayout getLayout() {
+        return mLayout;
+    }
+
+    int getLineCount() {
+        return mLineCount;
+    }
+
+    private void rebuild(TextLayout layout) {
+        mLayout = layout;
+        mLineCount = layout.getLineCount();
+        mTextLength = layout.getText().length();
+
+        if (mLineStarts.length < mLineCount + 1) {
+            mLineTops = new int[mLineCount + 1];
+            mLineBottoms = new int[mLineCount];
+            mLineStarts = new int[mLineCount + 1];
+            mLineLefts = new float[mLineCount];
+            mLineLeftValid = new boolean[mLineCount];
+            mLineRights = new float[mLineCount];
+            mLineRightValid = new boolean[mLineCount];
+        }
+        for (int line = 0; line < mLineCount; line++) {
+            mLineTops[line] = layout.getLineTop(line);
+            mLineStarts[line] = layout.getLineStart(line);
+            mLineLeftValid[line] = false;
+            mLineRightValid[line] = false;
+        }
+        mLineTops[mLineCount] = layout.getLineTop(mLineCount);
+        mLineStarts[mLineCount] = layout.getLineStart(mLineCount);
+        for (int line = 0; line < mLineCount; line++) {
+            mLineBottoms[line] = mLineTops[line + 1];
+        }
+        mAdvanceIndex = isAdvanceIndexEnabled ? createAdvanceIndex(layout) : null;
+    }
+
+    /**
+     * Same contract as {@code Layout.getLineForOffset(int)}.
+     */
+    int getLineForOffset(int offset) {
+        int high = mLineCount, low = -1, guess;
+        while (high - low > 1) {
+            guess = (high + low) >>> 1;
+            if (mLineStarts[guess] > offset) {
+                high = guess;
+            } else {
+                low = guess;
+            }
+        }
+        return low < 0 ? 0 : low;
+    }
+
+    /**
+     * Same contract as {@code Layout.getLineForVertical(int)}.
+     */
+    int getLineForVertical(int vertical) {
+        int high = mLineCount, low = -1, guess;
+        while (high - low > 1) {
+            guess = (high + low) >>> 1;
+            if (mLineTops[guess] > vertical) {
+                high = guess;
+            } else {
+                low = guess;
+            }
+        }
+        return low < 0 ? 0 : low;
+    }
+
+    int getLineTop(int line) {
+        return mLineTops[line];
+    }
+
+    int getLineBottom(int line) {
+        return mLineBottoms[line];
+    }
+
+    int getLineStart(int line) {
+        return mLineStarts[line];
+    }
+
+    int getLineEnd(int line) {
+        return mLineStarts[line + 1];
+    }
+
+    /**
+     * @return the text length of the layout the cache was built for
+     */
+    int getTextLength() {
+        return mTextLength;
+    }
+
+    /**
+     * @return the primary horizontal of the first offset of the line
+     */
+    float getLineLeft(int line) {
+        if (!mLineLeftValid[line]) {
+            mLineLefts[line] = mLayout.getPrimaryHorizontal(mLineStarts[line]);
+            mLineLeftValid[line] = true;
+        }
+        return mLineLefts[line];
+    }
+
+    /**
+     * Same contract as {@link TextLayout#getLineRight(int)}.
+     */
+    float getLineRight(int line) {
+        if (!mLineRightValid[line]) {
+            mLineRights[line] = mLayout.getLineRight(line);
+            mLineRightValid[line] = true;
+        }
+        return mLineRights[line];
+    }
+
+    /**
+     * Same contract as {@link TextLayout#getPrimaryHorizontal(int)}.
+     */
+    float getPrimaryHorizontal(int offset) {
+        if (mAdvanceIndex != null) {
+            int line = getLineForOffset(offset);
+            float[] advances = mAdvanceIndex.getLineAdvances(line);
+            if (advances != null) {
+                return advances[offset - mLineStarts[line]];
+            }
+        }
+        return mLayout.getPrimaryHorizontal(offset);
+    }
+
+    /**
+     * Same contract as {@link TextLayout#getOffsetForHorizontal(int, float)}.
+     */
+    int getOffsetForHorizontal(int line, float horiz) {
+        if (mAdvanceIndex != null) {
+            float[] advances = mAdvanceIndex.getLineAdvances(line);
+            if (advances != null) {
+                return mAdvanceIndex.getOffsetForHorizontal(line, advances, horiz);
+            }
+        }
+        return mLayout.getOffsetForHorizontal(line, horiz);
+    }
+
+    /**
+     * Same contract as {@link TextLayout#getOffsetToLeftOf(int)}.
+     */
+    int getOffsetToLeftOf(int offset) {
+        if (mAdvanceIndex != null) {
+            int line = getLineForOffset(offset);
+            if (offset > mLineStarts[line] && mAdvanceIndex.getLineAdvances(line) != null) {
+                return offset - 1;
+            }
+        }
+        return mLayout.getOffsetToLeftOf(offset);
+    }
+
+    /**
+     * @return the horizontal position of offset, relative to the start of its line
+     */
+    int getHorizontalInLine(int offset) {
+        return (int) getPrimaryHorizontal(offset) - (int) getLineLeft(getLineForOffset(offset));
+    }
+}
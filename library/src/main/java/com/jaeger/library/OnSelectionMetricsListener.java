@@ -0,0 +1,21 @@
+package com.jaeger.library;
+
+/**
+ * Receives the measurements of {@link SelectionMetrics}, see
+ * {@link SelectableTextHelper.Builder#setMetricsListener(OnSelectionMetricsListener)}.
+ * <p>
+ * The same metrics instance is passed every time and updated in place, copy what you want to
+ * keep before returning.
+ */
+public interface OnSelectionMetricsListener {
+
+    /**
+     * Called once the handles of a long-pressed selection are on screen.
+     */
+    void onSelectionShown(SelectionMetrics metrics);
+
+    /**
+     * Called when a handle is released, with the counters of that drag.
+     */
+    void onDragFinished(SelectionMetrics metrics);
+}
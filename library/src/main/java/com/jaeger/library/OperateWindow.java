@@ -0,0 +1,142 @@
+package com.jaeger.library;
+
+import android.content.Context;
+import android.os.Build;
+import android.view.Gravity;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.PopupWindow;
+
+/**
+ * Operate windows : copy, select all. The shared one of {@link SelectionManager}, shown above
+ * the first line of the selection of the {@link SelectionViewHost} it is bound to.
+ */
+class OperateWindow {
+
+    private PopupWindow mWindow;
+    private View mContentView;
+    private int[] mTempCoors = new int[2];
+
+    private int mWidth;
+    private int mHeight;
+
+    private SelectionViewHost mHost;
+    // drawn here instead of mWindow when set
+    private SelectionOverlay mOverlay;
+
+    OperateWindow(final Context context) {
+        View contentView = LayoutInflater.from(context).inflate(R.layout.layout_operate_windows, null);
+        contentView.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        mWidth = contentView.getMeasuredWidth();
+        mHeight = contentView.getMeasuredHeight();
+        // laid out once for SelectionOverlay, which draws and hit tests it detached
+        contentView.layout(0, 0, mWidth, mHeight);
+        mContentView = contentView;
+        mWindow = new PopupWindow(contentView, ViewGroup.LayoutParams.WRAP_CONTENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT, false);
+        mWindow.setClippingEnabled(false);
+
+        contentView.findViewById(R.id.tv_copy).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (mHost != null) {
+                    mHost.copySelection();
+                }
+            }
+        });
+        contentView.findViewById(R.id.tv_select_all).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (mHost != null) {
+                    mHost.selectAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * Re-targets the pooled window to host, or detaches it when host is null.
+     */
+    void bind(SelectionViewHost host, SelectionOverlay overlay) {
+        mHost = host;
+        mOverlay = overlay;
+    }
+
+    void show() {
+        if (!computePosition()) {
+            return;
+        }
+        if (mOverlay != null) {
+            mOverlay.show(mContentView, mTempCoors[0], mTempCoors[1]);
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mWindow.setElevation(8f);
+        }
+        mWindow.showAtLocation(mHost.getAnchorView(), Gravity.NO_GRAVITY, mTempCoors[0], mTempCoors[1]);
+        SelectionMetrics metrics = mHost.getMetrics();
+        if (metrics != null) {
+            metrics.mPopupShowCount++;
+        }
+    }
+
+    /**
+     * Writes the screen position of the window, above the first line of the selection,
+     * into mTempCoors.
+     *
+     * @return false if the host has no layout to place it with
+     */
+    private boolean computePosition() {
+        if (!mHost.getLineTopPosition(mHost.getSelectionStart(), mTempCoors)) {
+            return false;
+        }
+        Context context = mHost.getAnchorView().getContext();
+        int posX = mTempCoors[0];
+        int posY = mTempCoors[1] - mHeight - 16;
+        if (posX <= 0) posX = 16;
+        if (posY < 0) posY = 16;
+        if (posX + mWidth > TextLayoutUtil.getScreenWidth(context)) {
+            posX = TextLayoutUtil.getScreenWidth(context) - mWidth - 16;
+        }
+        mTempCoors[0] = posX;
+        mTempCoors[1] = posY;
+        return true;
+    }
+
+    /**
+     * Scroll follow mode: moves the shown window with the text, hides it while the start of
+     * the selection is scrolled out.
+     */
+    void follow() {
+        if (!mHost.isOffsetVisible(mHost.getSelectionStart(), false)) {
+            dismiss();
+        } else if (!isShowing()) {
+            show();
+        } else if (mOverlay != null) {
+            show();
+        } else if (computePosition()) {
+            mWindow.update(mTempCoors[0], mTempCoors[1], -1, -1);
+            SelectionMetrics metrics = mHost.getMetrics();
+            if (metrics != null) {
+                metrics.mPopupUpdateCount++;
+            }
+        }
+    }
+
+    void dismiss() {
+        if (mOverlay != null) {
+            mOverlay.hide(mContentView);
+            return;
+        }
+        if (mHost != null && mHost.getMetrics() != null && mWindow.isShowing()) {
+            mHost.getMetrics().mPopupDismissCount++;
+        }
+        mWindow.dismiss();
+    }
+
+    boolean isShowing() {
+        return mOverlay != null ? mOverlay.isShowing(mContentView) : mWindow.isShowing();
+    }
+}
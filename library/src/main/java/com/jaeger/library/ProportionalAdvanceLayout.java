@@ -0,0 +1,168 @@
+package com.jaeger.library;
+
+import java.util.Arrays;
+
+/**
+ * A {@link TextLayout} with a different advance per kind of char: narrow punctuation, i and l,
+ * wide capitals, m and w, and double width CJK. Lines end after a line feed or before the char
+ * that would not fit into width anymore, breaking anywhere.
+ * <p>
+ * Like android.text.Layout measuring a line with its paint, the horizontal queries walk the
+ * line char by char, so their cost grows with the length of the line. Plain Java, for unit tests
+ * and benchmarks of the glyph advance index without a device.
+ */
+class ProportionalAdvanceLayout implements TextLayout {
+
+    private final CharSequence mText;
+    private final float mAdvance;
+    private final int mLineHeight;
+    // mLineStarts[mLineCount] is the end of the text
+    private int[] mLineStarts = new int[16];
+    private int mLineCount;
+
+    /**
+     * @param advance the advance of an ordinary Latin char, the others are multiples of it
+     */
+    ProportionalAdvanceLayout(CharSequence text, float width, float advance, int lineHeight) {
+        mText = text;
+        mAdvance = advance;
+        mLineHeight = lineHeight;
+        int length = text.length();
+        int lineStart = 0;
+        float lineWidth = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                addLine(lineStart);
+                lineStart = i + 1;
+                lineWidth = 0;
+                continue;
+            }
+            float charAdvance = getAdvance(c);
+            if (lineWidth + charAdvance > width && i > lineStart) {
+                addLine(lineStart);
+                lineStart = i;
+                lineWidth = 0;
+            }
+            lineWidth += charAdvance;
+        }
+        // like android.text.Layout, text ending with a line feed has an empty last line
+        addLine(lineStart);
+        if (mLineCount == mLineStarts.length) {
+            mLineStarts = Arrays.copyOf(mLineStarts, mLineCount + 1);
+        }
+        mLineStarts[mLineCount] = length;
+    }
+
+    private void addLine(int start) {
+        if (mLineCount == mLineStarts.length) {
+            mLineStarts = Arrays.copyOf(mLineStarts, mLineCount * 2);
+        }
+        mLineStarts[mLineCount++] = start;
+    }
+
+    private float getAdvance(char c) {
+        if (c == '\n') {
+            return 0;
+        }
+        if (c >= '\u2E80') {
+            // CJK and full width forms
+            return mAdvance * 2;
+        }
+        if (c == 'i' || c == 'l' || c == ' ' || c == '.' || c == ',') {
+            return mAdvance / 2;
+        }
+        if (c == 'm' || c == 'w' || (c >= 'A' && c <= 'Z')) {
+            return mAdvance * 1.5f;
+        }
+        return mAdvance;
+    }
+
+    private int getLineForOffset(int offset) {
+        int index = Arrays.binarySearch(mLineStarts, 0, mLineCount, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * @return the sum of the advances of start to end
+     */
+    private float measure(int start, int end) {
+        float width = 0;
+        for (int i = start; i < end; i++) {
+            width += getAdvance(mText.charAt(i));
+        }
+        return width;
+    }
+
+    @Override
+    public CharSequence getText() {
+        return mText;
+    }
+
+    @Override
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    @Override
+    public int getLineTop(int line) {
+        return line * mLineHeight;
+    }
+
+    @Override
+    public int getLineStart(int line) {
+        return mLineStarts[line];
+    }
+
+    @Override
+    public float getLineRight(int line) {
+        return measure(mLineStarts[line], mLineStarts[line + 1]);
+    }
+
+    @Override
+    public float getPrimaryHorizontal(int offset) {
+        return measure(mLineStarts[getLineForOffset(offset)], offset);
+    }
+
+    @Override
+    public int getOffsetForHorizontal(int line, float horiz) {
+        int start = mLineStarts[line];
+        int max = mLineStarts[line + 1];
+        if (line != mLineCount - 1 && max > start) {
+            max--;
+        }
+        // the closest offset, the earlier one on a tie except for the line end
+        int best = start;
+        float bestDistance = Math.abs(horiz);
+        float x = 0;
+        for (int offset = start + 1; offset <= max; offset++) {
+            x += getAdvance(mText.charAt(offset - 1));
+            float distance = Math.abs(x - horiz);
+            if (distance < bestDistance || (distance == bestDistance && offset == max)) {
+                best = offset;
+                bestDistance = distance;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public int getOffsetToLeftOf(int offset) {
+        return offset > 0 ? offset - 1 : 0;
+    }
+
+    @Override
+    public boolean isMeasurableByChar() {
+        return true;
+    }
+
+    @Override
+    public boolean getLineWidths(int line, float[] widths) {
+        int start = mLineStarts[line];
+        int end = mLineStarts[line + 1];
+        for (int i = start; i < end; i++) {
+            widths[i - start] = getAdvance(mText.charAt(i));
+        }
+        return true;
+    }
+}
@@ -0,0 +1,171 @@
+package com.jaeger.library;
+
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.text.Editable;
+import android.text.Html;
+import android.text.NoCopySpan;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextUtils;
+import android.text.style.CharacterStyle;
+import android.text.style.ParagraphStyle;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Copies a range of a text as an HTML plus plain text clip without blocking the copy tap.
+ * <p>
+ * The constructor takes a snapshot on the main thread that costs O(spans): the span objects
+ * with their clipped ranges, and the chars only if the text is Editable (the chars of any
+ * other text never change). A text without spans is copied as plain text. Building the String
+ * and the HTML runs on a single background thread, the clipboard commit is posted back to the
+ * main thread and dropped if another copy started in the meantime.
+ */
+class RichTextCopyTask implements Runnable {
+
+    private static Executor sExecutor;
+    private static Handler sMainHandler;
+    // only touched on the main thread
+    private static int sGeneration;
+
+    private final ClipboardManager mClipboard;
+    private final OnSelectListener mSelectListener;
+    private final int mGeneration;
+    private final int mLabelLength;
+
+    private final CharSequence mText;
+    private final int mStart;
+    private final int mEnd;
+    private final Object[] mSpans;
+    private final int[] mSpanStarts;
+    private final int[] mSpanEnds;
+
+    /**
+     * @param exclude a span that is not part of the content, the selection highlight
+     */
+    RichTextCopyTask(ClipboardManager clipboard, CharSequence text, int start, int end, Object exclude,
+                     int labelLength, OnSelectListener selectListener) {
+        mClipboard = clipboard;
+        mSelectListener = selectListener;
+        mGeneration = ++sGeneration;
+        mLabelLength = labelLength;
+
+        if (text instanceof Editable) {
+            char[] chars = new char[end - start];
+            TextUtils.getChars(text, start, end, chars, 0);
+            mText = new String(chars);
+            mStart = 0;
+            mEnd = chars.length;
+        } else {
+            mText = text;
+            mStart = start;
+            mEnd = end;
+        }
+
+        // only the styles Html.toHtml() understands, watchers and other NoCopySpans must not be
+        // attached to a second text
+        if (!(text instanceof Spanned)) {
+            mSpans = new Object[0];
+            mSpanStarts = new int[0];
+            mSpanEnds = new int[0];
+            return;
+        }
+        Spanned spanned = (Spanned) text;
+        CharacterStyle[] characterStyles = spanned.getSpans(start, end, CharacterStyle.class);
+        ParagraphStyle[] paragraphStyles = spanned.getSpans(start, end, ParagraphStyle.class);
+        Object[] spans = new Object[characterStyles.length + paragraphStyles.length];
+        int count = 0;
+        for (Object span : characterStyles) {
+            if (span != exclude && !(span instanceof NoCopySpan)) {
+                spans[count++] = span;
+            }
+        }
+        for (Object span : paragraphStyles) {
+            if (!(span instanceof NoCopySpan)) {
+                spans[count++] = span;
+            }
+        }
+        mSpans = new Object[count];
+        mSpanStarts = new int[count];
+        mSpanEnds = new int[count];
+        for (int i = 0; i < count; i++) {
+            mSpans[i] = spans[i];
+            mSpanStarts[i] = Math.max(spanned.getSpanStart(spans[i]), start) - start;
+            mSpanEnds[i] = Math.min(spanned.getSpanEnd(spans[i]), end) - start;
+        }
+    }
+
+    /**
+     * Drops the clip of any task that has not committed yet.
+     */
+    static void cancelPending() {
+        sGeneration++;
+    }
+
+    void execute() {
+        if (sExecutor == null) {
+            sMainHandler = new Handler(Looper.getMainLooper());
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "SelectableText-copy");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        sExecutor.execute(this);
+    }
+
+    @Override
+    public void run() {
+        final String plain = TextUtils.substring(mText, mStart, mEnd);
+        String html = null;
+        if (mSpans.length > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            SpannableStringBuilder builder = new SpannableStringBuilder(plain);
+            for (int i = 0; i < mSpans.length; i++) {
+                if (mSpanStarts[i] <= mSpanEnds[i]) {
+                    // clipped ranges may break paragraph boundaries, flags would only get in the way
+                    builder.setSpan(mSpans[i], mSpanStarts[i], mSpanEnds[i], Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+            }
+            // ImageSpans are written as <img> with their source URI
+            html = Html.toHtml(builder);
+        }
+        final String htmlText = html;
+        sMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                commit(plain, htmlText);
+            }
+        });
+    }
+
+    private void commit(String plain, String html) {
+        if (mGeneration != sGeneration) {
+            return;
+        }
+        CharSequence label = plain.length() > mLabelLength ? plain.substring(0, mLabelLength) : plain;
+        if (html != null) {
+            mClipboard.setPrimaryClip(ClipData.newHtmlText(label, plain, html));
+        } else {
+            mClipboard.setPrimaryClip(ClipData.newPlainText(label, plain));
+        }
+        if (mSelectListener != null) {
+            mSelectListener.onTextSelected(plain);
+        }
+    }
+}
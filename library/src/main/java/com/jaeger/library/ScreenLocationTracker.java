@@ -0,0 +1,71 @@
+package com.jaeger.library;
+
+import android.view.View;
+
+/**
+ * Caches the screen location of a view for the placement code of a visible selection.
+ * <p>
+ * The location is computed at most once between invalidations. The owner invalidates it on
+ * every pre-draw and scroll callback of the window, which also covers window moves, and the
+ * tracker itself on layout changes of the view while it is started. Several move events in one
+ * frame then share one walk up the view hierarchy.
+ */
+class ScreenLocationTracker implements View.OnLayoutChangeListener {
+
+    private View mView;
+    private final int[] mLocation = new int[2];
+    private boolean isValid;
+    private boolean isStarted;
+
+    ScreenLocationTracker(View view) {
+        mView = view;
+    }
+
+    /**
+     * Tracks view instead, stopping first.
+     */
+    void setView(View view) {
+        stop();
+        mView = view;
+    }
+
+    void start() {
+        if (!isStarted) {
+            isStarted = true;
+            mView.addOnLayoutChangeListener(this);
+        }
+        isValid = false;
+    }
+
+    void stop() {
+        if (isStarted) {
+            isStarted = false;
+            mView.removeOnLayoutChangeListener(this);
+        }
+        isValid = false;
+    }
+
+    void invalidate() {
+        isValid = false;
+    }
+
+    /**
+     * Writes the screen location of the view into outLocation, the same as
+     * {@link View#getLocationOnScreen(int[])}.
+     */
+    void getLocation(int[] outLocation) {
+        if (!isValid) {
+            mView.getLocationOnScreen(mLocation);
+            // only cache while some callback is going to invalidate it
+            isValid = isStarted;
+        }
+        outLocation[0] = mLocation[0];
+        outLocation[1] = mLocation[1];
+    }
+
+    @Override
+    public void onLayoutChange(View v, int left, int top, int right, int bottom,
+                               int oldLeft, int oldTop, int oldRight, int oldBottom) {
+        isValid = false;
+    }
+}
@@ -1,24 +1,22 @@
 package com.jaeger.library;
 
 import android.content.ClipData;
+import android.content.ClipDescription;
 import android.content.ClipboardManager;
 import android.content.Context;
-import android.graphics.Canvas;
-import android.graphics.Paint;
+import android.graphics.Rect;
+import android.net.Uri;
 import android.os.Build;
 import android.support.annotation.ColorInt;
-import android.text.Layout;
+import android.text.Editable;
 import android.text.Spannable;
 import android.text.Spanned;
+import android.text.TextUtils;
 import android.text.style.BackgroundColorSpan;
 import android.util.Log;
-import android.view.Gravity;
-import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewTreeObserver;
-import android.widget.PopupWindow;
 import android.widget.TextView;
 
 /**
@@ -29,12 +27,20 @@ import android.widget.TextView;
  */
 
 public class SelectableTextHelper {
+    public static final int GRANULARITY_CHARACTER = TextBoundaryIndex.CHARACTER;
+    public static final int GRANULARITY_WORD = TextBoundaryIndex.WORD;
+    public static final int GRANULARITY_SENTENCE = TextBoundaryIndex.SENTENCE;
+    public static final int GRANULARITY_PARAGRAPH = TextBoundaryIndex.PARAGRAPH;
+
     private static int COLOR_SELECTED = 0x404086F8;
     private static int COLOR_HANDLE = 0xFF4086F8;
     private final static int DEFAULT_SELECTION_LENGTH = 1;
+    // selections longer than this are copied through SelectionContentProvider in large document mode
+    private static final int LARGE_SELECTION_LENGTH = 64 * 1024;
+    private static final int CLIP_LABEL_LENGTH = 64;
     private static final int DEFAULT_SHOW_DURATION = 100;
 
-    private static SelectableTextHelper waitingHelper;
+    // the shared views of SelectionManager while this helper holds them
     private CursorHandle mStartHandle;
     private CursorHandle mEndHandle;
     private OperateWindow mOperateWindow;
@@ -43,7 +49,11 @@ public class SelectableTextHelper {
 
     private Context mContext;
     private TextView mTextView;
+    // the text the selection refers to, also held as mSpannable while the span highlight is used
+    private CharSequence mText;
     private Spannable mSpannable;
+    private final LineGeometryCache mLineCache = new LineGeometryCache();
+    private final LineCacheInvalidator mLineCacheInvalidator = new LineCacheInvalidator(mLineCache);
 
     private int mTouchX;
     private int mTouchY;
@@ -52,11 +62,40 @@ public class SelectableTextHelper {
     private int mCursorHandleColor;
     private int mCursorHandleSize;
     private BackgroundColorSpan mSpan;
+    // non-null when the selection is drawn as a path instead of with mSpan
+    private SelectionHighlight mHighlight;
+    // search matches and saved highlights, created on first use
+    private HighlightLayer mHighlightLayer;
+    private int mSpanOperationCount;
+    private boolean isVsyncCoalescingEnabled;
+    private boolean isSpannableDeferred;
+    private boolean isLargeDocumentMode;
+    private boolean isRichTextCopyEnabled;
+    private boolean isScrollFollowEnabled;
+    private boolean isOverlayRendererEnabled;
+    private boolean isAutoScrollEnabled;
+    private int mGranularity;
+    private TextBoundaryIndex mBoundaryIndex;
     private boolean isHideWhenScroll;
     private boolean isCurrentHide = true;
+    // screen position of the TextView the popups were last placed for, scroll follow mode only
+    private final int[] mFollowCoors = new int[2];
+    private final int[] mTempCoors = new int[2];
+    private final Rect mTempRect = new Rect();
+    private ScreenLocationTracker mLocationTracker;
+
+    private ViewTreeDispatcher.Client mViewTreeClient;
+
+    // null unless a metrics listener is installed, every counter update checks mMetrics first
+    private OnSelectionMetricsListener mMetricsListener;
+    private SelectionMetrics mMetrics;
 
-    private ViewTreeObserver.OnPreDrawListener mOnPreDrawListener;
-    ViewTreeObserver.OnScrollChangedListener mOnScrollChangedListener;
+    // set when the helper is created by a SelectionController for the active selection only
+    private SelectionController mController;
+    // a selection to show once the TextView is laid out, -1 if there is none
+    private int mRestoreStart = -1;
+    private int mRestoreEnd = -1;
+    private View.OnAttachStateChangeListener mOnAttachStateChangeListener;
 
     public static void setTextSelectable(TextView textView) {
         SelectableTextHelper selectableTextHelper = new SelectableTextHelper.Builder(textView)
@@ -73,11 +112,17 @@ public class SelectableTextHelper {
         });
     }
 
+    /**
+     * Sets up textView for {@link #showWaitingTextSelector(boolean)}, replacing the helper
+     * waiting in the same window. Helpers of other windows are kept, see {@link SelectionManager}.
+     */
     public static void setWaitingHelper(TextView textView) {
-        if (waitingHelper != null) {
-            waitingHelper.destroy();
+        SelectionManager manager = SelectionManager.getInstance();
+        SelectableTextHelper oldHelper = manager.getWindowHelper(textView);
+        if (oldHelper != null) {
+            oldHelper.destroy();
         }
-        waitingHelper = new SelectableTextHelper.Builder(textView)
+        SelectableTextHelper waitingHelper = new SelectableTextHelper.Builder(textView)
                 .setSelectedColor(COLOR_SELECTED)
                 .setCursorHandleSizeInDp(20)
                 .setCursorHandleColor(COLOR_HANDLE)
@@ -89,9 +134,11 @@ public class SelectableTextHelper {
 
             }
         });
+        manager.setWindowHelper(waitingHelper);
     }
 
     public static void showWaitingTextSelector(boolean allSelected) {
+        SelectableTextHelper waitingHelper = SelectionManager.getInstance().getLastHelper();
         if (waitingHelper == null) {
             return;
         }
@@ -103,25 +150,54 @@ public class SelectableTextHelper {
     }
 
     public static void hideShowingTextSelector() {
-        if (waitingHelper == null || waitingHelper.isCurrentHide) {
-            return;
+        SelectableTextHelper activeHelper = SelectionManager.getInstance().getActiveHelper();
+        if (activeHelper != null) {
+            activeHelper.hideSelection();
         }
-        waitingHelper.hideSelectView();
-        waitingHelper.resetSelectionInfo();
     }
 
     private SelectableTextHelper(Builder builder, boolean showImmediately) {
-        mTextView = builder.mTextView;
+        this(builder, builder.mTextView, showImmediately, null);
+    }
+
+    private SelectableTextHelper(Builder builder, TextView textView, boolean showImmediately,
+                                 SelectionController controller) {
+        mTextView = textView;
+        mController = controller;
         mContext = mTextView.getContext().getApplicationContext();
         mSelectedColor = builder.mSelectedColor;
         mCursorHandleColor = builder.mCursorHandleColor;
         mCursorHandleSize = TextLayoutUtil.dp2px(mContext, builder.mCursorHandleSizeInDp);
+        mLineCache.setAdvanceIndexEnabled(builder.isAdvanceIndexEnabled);
+        isVsyncCoalescingEnabled = builder.isVsyncCoalescingEnabled
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+        if (builder.isPathHighlightEnabled && SelectionHighlight.isSupported()) {
+            mHighlight = new SelectionHighlight(mTextView, mSelectedColor);
+        }
+        // a controlled helper is built at long-press time, converting then would drop the layout
+        // before the touched offset is resolved, it converts on the first selection instead.
+        // The path highlight never converts
+        isSpannableDeferred = builder.isSpannableDeferred || controller != null || mHighlight != null;
+        isLargeDocumentMode = builder.isLargeDocumentMode;
+        isRichTextCopyEnabled = builder.isRichTextCopyEnabled;
+        isScrollFollowEnabled = builder.isScrollFollowEnabled;
+        isOverlayRendererEnabled = builder.isOverlayRendererEnabled;
+        isAutoScrollEnabled = builder.isAutoScrollEnabled
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+        mGranularity = builder.mGranularity;
+        if (builder.mMetricsListener != null) {
+            mMetricsListener = builder.mMetricsListener;
+            mMetrics = new SelectionMetrics();
+        }
         init(showImmediately);
     }
 
     private void init(boolean showImmediately) {
-        mTextView.setText(mTextView.getText(), TextView.BufferType.SPANNABLE);
-        if (showImmediately) {
+        if (!isSpannableDeferred) {
+            mTextView.setText(mTextView.getText(), TextView.BufferType.SPANNABLE);
+        }
+        // a controlled helper gets its touches and long clicks from the controller's shared listeners
+        if (showImmediately && mController == null) {
             mTextView.setOnLongClickListener(new View.OnLongClickListener() {
                 @Override
                 public boolean onLongClick(View v) {
@@ -130,46 +206,70 @@ public class SelectableTextHelper {
                 }
             });
         }
-        mTextView.setOnTouchListener(new View.OnTouchListener() {
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                mTouchX = (int) event.getX();
-                mTouchY = (int) event.getY();
-                return false;
-            }
-        });
-        mTextView.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+        if (mController == null) {
+            mTextView.setOnTouchListener(new View.OnTouchListener() {
+                @Override
+                public boolean onTouch(View v, MotionEvent event) {
+                    mTouchX = (int) event.getX();
+                    mTouchY = (int) event.getY();
+                    return false;
+                }
+            });
+        }
+        mOnAttachStateChangeListener = new View.OnAttachStateChangeListener() {
             @Override
             public void onViewAttachedToWindow(View v) {
                 mContext = mTextView.getContext().getApplicationContext();
+                if (mRestoreStart >= 0) {
+                    // after the traversal that lays the TextView out
+                    mTextView.post(mRestoreRunnable);
+                }
             }
 
             @Override
             public void onViewDetachedFromWindow(View v) {
-                if (waitingHelper != null && waitingHelper.mTextView == mTextView) {
-                    waitingHelper.mContext = null;
-                    waitingHelper = null;
+                if (mController != null) {
+                    // a recycled cell, the controller brings the selection back with the text
+                    recycleSelection();
                 }
                 destroy();
+                SelectionManager.getInstance().remove(SelectableTextHelper.this);
             }
-        });
+        };
+        mTextView.addOnAttachStateChangeListener(mOnAttachStateChangeListener);
+        mLocationTracker = new ScreenLocationTracker(mTextView);
 
-        mOnPreDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        // registered with the window's dispatcher only while the selection is shown
+        mViewTreeClient = new ViewTreeDispatcher.Client() {
             @Override
-            public boolean onPreDraw() {
+            public void onPreDraw() {
+                // a new frame, the TextView or its window may have moved
+                mLocationTracker.invalidate();
+                if (mText != mTextView.getText()) {
+                    // the app replaced the text, the selection offsets are meaningless now
+                    hideSelectView();
+                    resetSelectionInfo();
+                    return;
+                }
+                if (mHighlight != null) {
+                    mHighlight.refresh();
+                }
+                if (isScrollFollowEnabled) {
+                    followTextView();
+                    return;
+                }
                 if (isHideWhenScroll) {
                     isHideWhenScroll = false;
                     postShowSelectView(DEFAULT_SHOW_DURATION);
                 }
-                return true;
             }
-        };
-        mTextView.getViewTreeObserver().addOnPreDrawListener(mOnPreDrawListener);
 
-        mOnScrollChangedListener = new ViewTreeObserver.OnScrollChangedListener() {
             @Override
             public void onScrollChanged() {
-                if (!isHideWhenScroll && !isCurrentHide) {
+                mLocationTracker.invalidate();
+                // in scroll follow mode the popups are moved on the next pre-draw instead, during
+                // a drag the handles move themselves
+                if (!isScrollFollowEnabled && !isHideWhenScroll && !isCurrentHide && !isHandleDragging()) {
                     isHideWhenScroll = true;
                     if (mOperateWindow != null) {
                         mOperateWindow.dismiss();
@@ -183,9 +283,88 @@ public class SelectableTextHelper {
                 }
             }
         };
-        mTextView.getViewTreeObserver().addOnScrollChangedListener(mOnScrollChangedListener);
+    }
 
-        mOperateWindow = new OperateWindow(mContext);
+    /**
+     * Removes the listeners added in {@link #init(boolean)}, a controlled helper lives only as
+     * long as its selection.
+     */
+    private void removeListeners() {
+        mTextView.removeOnAttachStateChangeListener(mOnAttachStateChangeListener);
+        mTextView.removeCallbacks(mShowSelectViewRunnable);
+        mTextView.removeCallbacks(mRestoreRunnable);
+    }
+
+    /**
+     * Points a destroyed controlled helper at another TextView, so the controller does not
+     * build a new helper for every selection.
+     */
+    void rebind(TextView textView, SelectionController controller) {
+        mTextView = textView;
+        mController = controller;
+        mText = null;
+        mSpannable = null;
+        mHighlightLayer = null;
+        mLineCache.invalidate();
+        mLocationTracker.setView(mTextView);
+        if (mHighlight != null) {
+            mHighlight.setTextView(mTextView);
+        }
+        mTextView.addOnAttachStateChangeListener(mOnAttachStateChangeListener);
+    }
+
+    /**
+     * Selects start to end as soon as the TextView is attached and laid out.
+     */
+    void restoreSelection(int start, int end) {
+        mRestoreStart = start;
+        mRestoreEnd = end;
+        mTextView.removeCallbacks(mRestoreRunnable);
+        if (mTextView.getWindowToken() != null) {
+            mTextView.post(mRestoreRunnable);
+        }
+    }
+
+    private final Runnable mRestoreRunnable = new Runnable() {
+        @Override
+        public void run() {
+            int start = mRestoreStart;
+            int end = mRestoreEnd;
+            mRestoreStart = -1;
+            if (start < 0 || end > mTextView.getText().length() || mTextView.getLayout() == null) {
+                return;
+            }
+            showSelection(start, end);
+        }
+    };
+
+    /**
+     * Moves the shown popups along when the TextView changed its screen position, hiding the
+     * ones whose offset scrolled out of the TextView's visible area.
+     */
+    private void followTextView() {
+        if (isCurrentHide || mStartHandle == null || mTextView.getLayout() == null) {
+            return;
+        }
+        mLocationTracker.getLocation(mTempCoors);
+        if (mTempCoors[0] == mFollowCoors[0] && mTempCoors[1] == mFollowCoors[1]) {
+            return;
+        }
+        mFollowCoors[0] = mTempCoors[0];
+        mFollowCoors[1] = mTempCoors[1];
+        mStartHandle.follow();
+        mEndHandle.follow();
+        mOperateWindow.follow();
+    }
+
+    /**
+     * @return whether the top (or bottom) of the line of offset is inside the visible part of
+     * the TextView
+     */
+    private boolean isOffsetVisible(int offset, boolean atLineBottom) {
+        LineGeometryCache lineCache = AndroidTextLayout.obtain(mLineCache, mTextView);
+        return lineCache != null
+                && TextLayoutUtil.isOffsetVisible(mTextView, lineCache, offset, atLineBottom, mTempRect);
     }
 
     private void postShowSelectView(int duration) {
@@ -200,21 +379,26 @@ public class SelectableTextHelper {
     private final Runnable mShowSelectViewRunnable = new Runnable() {
         @Override
         public void run() {
-            if (isCurrentHide) return;
+            if (isCurrentHide || mTextView.getLayout() == null) return;
             if (mOperateWindow != null) {
                 mOperateWindow.show();
             }
             if (mStartHandle != null) {
-                showCursorHandle(mStartHandle);
+                mStartHandle.show();
             }
             if (mEndHandle != null) {
-                showCursorHandle(mEndHandle);
+                mEndHandle.show();
             }
+            mLocationTracker.getLocation(mFollowCoors);
+            reportSelectionShown();
         }
     };
 
     private void hideSelectView() {
         isCurrentHide = true;
+        isHideWhenScroll = false;
+        ViewTreeDispatcher.unregister(mViewTreeClient);
+        mLocationTracker.stop();
         if (mStartHandle != null) {
             mStartHandle.dismiss();
         }
@@ -230,56 +414,157 @@ public class SelectableTextHelper {
         mSelectionInfo.mSelectionContent = null;
         if (mSpannable != null && mSpan != null) {
             mSpannable.removeSpan(mSpan);
+            mSpanOperationCount++;
             mSpan = null;
         }
+        if (mHighlight != null) {
+            mHighlight.clear();
+        }
     }
 
-    private void showSelectView(int x, int y) {
-        if (waitingHelper != null) {
+    void showSelectView(int x, int y) {
+        if (mMetrics != null) {
+            mMetrics.mLongPressNanos = System.nanoTime();
+        }
+        SelectionManager manager = SelectionManager.getInstance();
+        SelectableTextHelper waitingHelper = manager.getWindowHelper(mTextView);
+        if (waitingHelper != null && waitingHelper != this) {
             waitingHelper.destroy();
         }
         hideSelectView();
         resetSelectionInfo();
-        if (mStartHandle == null) mStartHandle = new CursorHandle(true);
-        if (mEndHandle == null) mEndHandle = new CursorHandle(false);
-        if (mOperateWindow == null) mOperateWindow = new OperateWindow(mContext);
+        acquireViews();
 
-        int startOffset = TextLayoutUtil.getPreciseOffset(mTextView, x, y);
+        // resolve the offset before ensureText(), the conversion may drop the layout
+        int startOffset = TextLayoutUtil.getPreciseOffset(mTextView, x, y, mLineCache);
         int endOffset = startOffset + DEFAULT_SELECTION_LENGTH;
-        if (mTextView.getText() instanceof Spannable) {
-            mSpannable = (Spannable) mTextView.getText();
-        }
-        if (mSpannable == null || startOffset >= mTextView.getText().length()) {
+        if (startOffset < 0 || startOffset >= mTextView.getText().length() || !ensureText()) {
             return;
         }
+        TextBoundaryIndex boundaryIndex = getBoundaryIndex();
+        if (boundaryIndex != null) {
+            endOffset = boundaryIndex.higher(startOffset);
+            startOffset = boundaryIndex.floor(startOffset);
+        }
         selectText(startOffset, endOffset);
-        showCursorHandle(mStartHandle);
-        showCursorHandle(mEndHandle);
-        mOperateWindow.show();
 
         isCurrentHide = false;
-        waitingHelper = this;
+        showSelectionViews();
+        ViewTreeDispatcher.register(mTextView, mViewTreeClient);
+        mLocationTracker.start();
+        manager.setWindowHelper(this);
     }
 
     private void showAllTextSelected() {
+        showSelection(0, mTextView.getText().length());
+    }
+
+    private void showSelection(int start, int end) {
         hideSelectView();
         isCurrentHide = false;
-        if (mStartHandle == null) mStartHandle = new CursorHandle(true);
-        if (mEndHandle == null) mEndHandle = new CursorHandle(false);
-        if (mOperateWindow == null) mOperateWindow = new OperateWindow(mContext);
-        if (mSpannable == null) {
-            mSpannable = (Spannable) mTextView.getText();
-        }
-        selectText(0, mTextView.getText().length());
-        showCursorHandle(mStartHandle);
-        showCursorHandle(mEndHandle);
+        acquireViews();
+        if (!ensureText()) {
+            return;
+        }
+        selectText(start, end);
+        showSelectionViews();
+        ViewTreeDispatcher.register(mTextView, mViewTreeClient);
+        mLocationTracker.start();
+    }
+
+    /**
+     * Makes sure mText is the TextView's current text. For the span highlight the buffer is
+     * converted to a Spannable first if it is not one (deferred mode, or the app called
+     * setText() since), the path highlight takes the text as it is and watches its edits from
+     * the TextView, without a span on it.
+     */
+    private boolean ensureText() {
+        CharSequence text = mTextView.getText();
+        if (mHighlight == null && !(text instanceof Spannable)) {
+            mTextView.setText(text, TextView.BufferType.SPANNABLE);
+            text = mTextView.getText();
+        }
+        if (text != mText) {
+            if (mSpannable != null && mSpan != null) {
+                mSpannable.removeSpan(mSpan);
+                mSpanOperationCount++;
+                mSpan = null;
+            }
+            if (mHighlight != null) {
+                mHighlight.clear();
+            }
+            mText = text;
+            if (mHighlight == null) {
+                mLineCacheInvalidator.watch(text);
+            } else {
+                mLineCacheInvalidator.watchEdits(mTextView);
+            }
+            mSpannable = mHighlight == null && text instanceof Spannable ? (Spannable) text : null;
+        }
+        return mHighlight != null || mSpannable != null;
+    }
+
+    /**
+     * @return the boundary index of the current text, built on first use, or null for
+     * character granularity
+     */
+    private TextBoundaryIndex getBoundaryIndex() {
+        if (mGranularity == GRANULARITY_CHARACTER || mText == null) {
+            return null;
+        }
+        if (mBoundaryIndex == null || !mBoundaryIndex.isFor(mText, mGranularity)) {
+            mBoundaryIndex = new TextBoundaryIndex(mText, mGranularity);
+        }
+        return mBoundaryIndex;
+    }
+
+    private void showSelectionViews() {
+        if (mTextView.getLayout() == null) {
+            // setText() dropped the layout, a posted runnable runs after the next layout pass
+            mTextView.removeCallbacks(mShowSelectViewRunnable);
+            mTextView.post(mShowSelectViewRunnable);
+            return;
+        }
+        mStartHandle.show();
+        mEndHandle.show();
         mOperateWindow.show();
+        mLocationTracker.getLocation(mFollowCoors);
+        reportSelectionShown();
+    }
+
+    /**
+     * Reports the long-press to handles shown time, once per long-press.
+     */
+    private void reportSelectionShown() {
+        if (mMetrics == null || mMetrics.mLongPressNanos == 0) {
+            return;
+        }
+        mMetrics.mLongPressToShownNanos = System.nanoTime() - mMetrics.mLongPressNanos;
+        mMetrics.mLongPressNanos = 0;
+        mMetricsListener.onSelectionShown(mMetrics);
     }
 
-    private void showCursorHandle(CursorHandle cursorHandle) {
-        Layout layout = mTextView.getLayout();
-        int offset = cursorHandle.isLeft ? mSelectionInfo.mStart : mSelectionInfo.mEnd;
-        cursorHandle.show((int) layout.getPrimaryHorizontal(offset) - (int) layout.getPrimaryHorizontal(layout.getLineStart(layout.getLineForOffset(offset))), layout.getLineBottom(layout.getLineForOffset(offset)));
+    /**
+     * Takes the shared handles and operate window from whichever selection holds them.
+     */
+    private void acquireViews() {
+        SelectionManager manager = SelectionManager.getInstance();
+        // falls back to the PopupWindows when the TextView has no window with a ViewGroup root
+        SelectionOverlay overlay = isOverlayRendererEnabled ? SelectionOverlay.obtain(mTextView) : null;
+        manager.acquireViews(mViewHost, overlay);
+        manager.setActiveHelper(this);
+
+        mOperateWindow = manager.getOperateWindow();
+        mStartHandle = manager.getCursorHandle(true);
+        mEndHandle = manager.getCursorHandle(false);
+    }
+
+    private void releaseViews() {
+        SelectionManager manager = SelectionManager.getInstance();
+        manager.releaseViews(mViewHost);
+        if (manager.getActiveHelper() == this) {
+            manager.setActiveHelper(null);
+        }
     }
 
     private void selectText(int startPos, int endPos) {
@@ -295,325 +580,298 @@ public class SelectableTextHelper {
             mSelectionInfo.mEnd = temp;
         }
 
-        if (mSpannable != null) {
+        CharSequence text = mHighlight != null ? mText : mSpannable;
+        if (text == null) {
+            return;
+        }
+        if (mSelectionInfo.mEnd > text.length()) {
+            mSelectionInfo.mEnd = text.length();
+        }
+        if (mHighlight != null) {
+            // the path is only rebuilt when the range changed, the text is left alone
+            if (!mHighlight.setRange(mSelectionInfo.mStart, mSelectionInfo.mEnd)) {
+                return;
+            }
+        } else {
             if (mSpan == null) {
                 mSpan = new BackgroundColorSpan(mSelectedColor);
             }
-
-            if (mSelectionInfo.mEnd > mSpannable.length()) {
-                mSelectionInfo.mEnd = mSpannable.length();
+            // setSpan() on an attached span moves it with a single span change notification
+            if (mSpannable.getSpanStart(mSpan) == mSelectionInfo.mStart
+                    && mSpannable.getSpanEnd(mSpan) == mSelectionInfo.mEnd) {
+                return;
             }
-            mSelectionInfo.mSelectionContent = mSpannable.subSequence(mSelectionInfo.mStart, mSelectionInfo.mEnd).toString();
             mSpannable.setSpan(mSpan, mSelectionInfo.mStart, mSelectionInfo.mEnd, Spanned.SPAN_INCLUSIVE_EXCLUSIVE);
-            if (mSelectListener != null) {
-                mSelectListener.onTextSelected(mSelectionInfo.mSelectionContent);
-            }
+            mSpanOperationCount++;
+        }
+        mSelectionInfo.mSelectionContent = new SelectionContent(text, mSelectionInfo.mStart, mSelectionInfo.mEnd);
+        if (mSelectListener != null) {
+            mSelectListener.onTextSelected(mSelectionInfo.mSelectionContent);
+        }
+    }
+
+    private void copySelection() {
+        CharSequence content = mSelectionInfo.mSelectionContent;
+        if (content == null) {
+            return;
+        }
+        // a rich text copy still running in the background must not overwrite this one
+        RichTextCopyTask.cancelPending();
+        ClipboardManager clip = (ClipboardManager) mContext.getSystemService(Context.CLIPBOARD_SERVICE);
+        if (isLargeDocumentMode && content.length() > LARGE_SELECTION_LENGTH && !(mText instanceof Editable)) {
+            // the clip only carries a URI, the text is streamed in chunks on the pipe's thread
+            // whenever it is read, the chars of a text that is not Editable never change
+            Uri uri = SelectionContentProvider.publish(mContext,
+                    new SelectionContent(mText, mSelectionInfo.mStart, mSelectionInfo.mEnd));
+            CharSequence label = TextUtils.substring(content, 0, CLIP_LABEL_LENGTH);
+            clip.setPrimaryClip(new ClipData(label, new String[]{ClipDescription.MIMETYPE_TEXT_PLAIN},
+                    new ClipData.Item(uri)));
+        } else if (isRichTextCopyEnabled) {
+            // the clip and the select callback follow from the background thread
+            new RichTextCopyTask(clip, mText, mSelectionInfo.mStart, mSelectionInfo.mEnd, mSpan,
+                    CLIP_LABEL_LENGTH, mSelectListener).execute();
+            resetSelectionInfo();
+            hideSelectView();
+            return;
+        } else {
+            content = content.toString();
+            clip.setPrimaryClip(ClipData.newPlainText(content, content));
         }
+        if (mSelectListener != null) {
+            mSelectListener.onTextSelected(content);
+        }
+        resetSelectionInfo();
+        hideSelectView();
     }
 
     public void setSelectListener(OnSelectListener selectListener) {
         mSelectListener = selectListener;
     }
 
-    private void destroy() {
+    /**
+     * @return the highlights of the TextView, drawn below the selection and kept while it
+     * changes, see {@link HighlightLayer}. With a deferred Spannable or the path highlight the
+     * TextView keeps its text as set, which then has to be a Spannable for highlights
+     */
+    public HighlightLayer getHighlightLayer() {
+        if (mHighlightLayer == null) {
+            mHighlightLayer = new HighlightLayer(mTextView);
+        }
+        return mHighlightLayer;
+    }
+
+    /**
+     * @return the number of setSpan/removeSpan calls on the selection highlight since the
+     * current (or last) handle drag started
+     */
+    public int getSpanOperationCount() {
+        return mSpanOperationCount;
+    }
+
+    void destroy() {
+        mRestoreStart = -1;
         resetSelectionInfo();
         hideSelectView();
+        releaseViews();
         mStartHandle = null;
         mEndHandle = null;
         mOperateWindow = null;
+        mLineCache.invalidate();
+        mBoundaryIndex = null;
+        // watched again by the next selection
+        mLineCacheInvalidator.unwatch();
+        mText = null;
+        mSpannable = null;
+        if (mController != null) {
+            removeListeners();
+            mController.onHelperDestroyed(this);
+            mController = null;
+        }
     }
 
     /**
-     * Operate windows : copy, select all
+     * Hides the selection, the helper stays ready for the next long press.
      */
-    private class OperateWindow {
-
-        private PopupWindow mWindow;
-        private int[] mTempCoors = new int[2];
-
-        private int mWidth;
-        private int mHeight;
-
-        public OperateWindow(final Context context) {
-            View contentView = LayoutInflater.from(context).inflate(R.layout.layout_operate_windows, null);
-            contentView.measure(View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED),
-                    View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
-            mWidth = contentView.getMeasuredWidth();
-            mHeight = contentView.getMeasuredHeight();
-            mWindow =
-                    new PopupWindow(contentView, ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT, false);
-            mWindow.setClippingEnabled(false);
-
-            contentView.findViewById(R.id.tv_copy).setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    ClipboardManager clip = (ClipboardManager) mContext.getSystemService(Context.CLIPBOARD_SERVICE);
-                    clip.setPrimaryClip(
-                            ClipData.newPlainText(mSelectionInfo.mSelectionContent, mSelectionInfo.mSelectionContent));
-                    if (mSelectListener != null) {
-                        mSelectListener.onTextSelected(mSelectionInfo.mSelectionContent);
-                    }
-                    SelectableTextHelper.this.resetSelectionInfo();
-                    SelectableTextHelper.this.hideSelectView();
-                }
-            });
-            contentView.findViewById(R.id.tv_select_all).setOnClickListener(new View.OnClickListener() {
-                @Override
-                public void onClick(View v) {
-                    showAllTextSelected();
-                }
-            });
-        }
-
-
-        void show() {
-            /*mTextView.getLocationInWindow(mTempCoors);
-            Layout layout = mTextView.getLayout();
-            int posX = (int) layout.getPrimaryHorizontal(mSelectionInfo.mStart) + mTempCoors[0];
-            int posY = layout.getLineTop(layout.getLineForOffset(mSelectionInfo.mStart)) + mTempCoors[1] - mHeight - 16;
-            if (posX <= 0) posX = 16;
-            if (posY < 0) posY = 16;
-            if (posX + mWidth > TextLayoutUtil.getScreenWidth(mContext)) {
-                posX = TextLayoutUtil.getScreenWidth(mContext) - mWidth - 16;
-            }
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                mWindow.setElevation(8f);
-            }
-            mWindow.showAtLocation(mTextView, Gravity.NO_GRAVITY, posX, posY);*/
-
-            //(int) layout.getPrimaryHorizontal(offset) - (int) layout.getPrimaryHorizontal(layout.getLineStart(layout.getLineForOffset(offset)))
-
-            mTextView.getLocationOnScreen(mTempCoors);
-            Layout layout = mTextView.getLayout();
-            int posX = (int) layout.getPrimaryHorizontal(mSelectionInfo.mStart) - (int) layout.getPrimaryHorizontal(layout.getLineStart(layout.getLineForOffset(mSelectionInfo.mStart))) + mTempCoors[0];
-            int posY = layout.getLineTop(layout.getLineForOffset(mSelectionInfo.mStart)) + mTempCoors[1] - mHeight - 16;
-            if (posX <= 0) posX = 16;
-            if (posY < 0) posY = 16;
-            if (posX + mWidth > TextLayoutUtil.getScreenWidth(mContext)) {
-                posX = TextLayoutUtil.getScreenWidth(mContext) - mWidth - 16;
-            }
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                mWindow.setElevation(8f);
-            }
-            mWindow.showAtLocation(mTextView, Gravity.NO_GRAVITY, posX, posY);
+    void hideSelection() {
+        if (isCurrentHide) {
+            return;
         }
+        hideSelectView();
+        resetSelectionInfo();
+    }
 
-        public void dismiss() {
-            mWindow.dismiss();
-        }
+    TextView getTextView() {
+        return mTextView;
+    }
 
-        public boolean isShowing() {
-            return mWindow.isShowing();
+    /**
+     * Hands the shown or still pending selection to the controller before the TextView is
+     * recycled.
+     */
+    void recycleSelection() {
+        if (mRestoreStart >= 0) {
+            mController.onSelectionRecycled(mTextView, mRestoreStart, mRestoreEnd);
+        } else if (!isCurrentHide && mSelectionInfo.mSelectionContent != null) {
+            mController.onSelectionRecycled(mTextView, mSelectionInfo.mStart, mSelectionInfo.mEnd);
         }
     }
 
-    private class CursorHandle extends View {
-
-        private PopupWindow mPopupWindow;
-        private Paint mPaint;
-
-        private int mCircleRadius = mCursorHandleSize / 2;
-        private int mWidth = mCircleRadius * 2;
-        private int mHeight = mCircleRadius * 2;
-        private int mPadding = 25;
-        private boolean isLeft;
+    private void printLog(String msg) {
+        Log.e(getClass().getCanonicalName(), msg);
+    }
 
-        public CursorHandle(boolean isLeft) {
-            super(mContext);
-            this.isLeft = isLeft;
-            mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            mPaint.setColor(mCursorHandleColor);
+    private boolean isHandleDragging() {
+        return mStartHandle != null && (mStartHandle.isDragging() || mEndHandle.isDragging());
+    }
 
-            mPopupWindow = new PopupWindow(this);
-            mPopupWindow.setClippingEnabled(false);
-            mPopupWindow.setWidth(mWidth + mPadding * 2);
-            mPopupWindow.setHeight(mHeight + mPadding / 2);
-            invalidate();
+    // what the shared views of SelectionManager see of this helper
+    private final SelectionViewHost mViewHost = new SelectionViewHost() {
+        @Override
+        public View getAnchorView() {
+            return mTextView;
         }
 
         @Override
-        protected void onDraw(Canvas canvas) {
-            canvas.drawCircle(mCircleRadius + mPadding, mCircleRadius, mCircleRadius, mPaint);
-            if (isLeft) {
-                canvas.drawRect(mCircleRadius + mPadding, 0, mCircleRadius * 2 + mPadding, mCircleRadius, mPaint);
-            } else {
-                canvas.drawRect(mPadding, 0, mCircleRadius + mPadding, mCircleRadius, mPaint);
-            }
+        public int getCursorHandleSize() {
+            return mCursorHandleSize;
         }
 
-        private int mAdjustX;
-        private int mAdjustY;
-
-        private int mAdjustRawX;
-        private int mAdjustRawY;
-
-        private int mCurMotionX;
-        private int mCurMotionY;
-
-        private int mCurMotionRawX;
-        private int mCurMotionRawY;
-
-        private int mBeforeDragStart;
-        private int mBeforeDragEnd;
-
-        private int[] mTempCoors = new int[2];
-
         @Override
-        public boolean onTouchEvent(MotionEvent event) {
-            switch (event.getAction()) {
-                case MotionEvent.ACTION_DOWN:
-
-                    mBeforeDragStart = mSelectionInfo.mStart;
-                    mBeforeDragEnd = mSelectionInfo.mEnd;
+        public int getCursorHandleColor() {
+            return mCursorHandleColor;
+        }
 
-                    mAdjustX = (int) event.getX();
-                    mAdjustY = (int) event.getY();
+        @Override
+        public SelectionMetrics getMetrics() {
+            return mMetrics;
+        }
 
-                    mAdjustRawX = (int) event.getRawX();
-                    mAdjustRawY = (int) event.getRawY();
+        @Override
+        public ScreenLocationTracker getLocationTracker() {
+            return mLocationTracker;
+        }
 
-                    break;
-                case MotionEvent.ACTION_UP:
-                case MotionEvent.ACTION_CANCEL:
-                    mOperateWindow.show();
-                    break;
-                case MotionEvent.ACTION_MOVE:
-                    mOperateWindow.dismiss();
+        @Override
+        public boolean isVsyncCoalescingEnabled() {
+            return isVsyncCoalescingEnabled;
+        }
 
-                    this.mCurMotionX = (int) event.getX();
-                    this.mCurMotionY = (int) event.getY();
+        @Override
+        public boolean isAutoScrollEnabled() {
+            return isAutoScrollEnabled;
+        }
 
-                    this.mCurMotionRawX = (int) event.getRawX();
-                    this.mCurMotionRawY = (int) event.getRawY();
+        @Override
+        public int getSelectionStart() {
+            return mSelectionInfo.mStart;
+        }
 
-                    update(this.mCurMotionX, this.mCurMotionY, this.mCurMotionRawX, this.mCurMotionRawY);
+        @Override
+        public int getSelectionEnd() {
+            return mSelectionInfo.mEnd;
+        }
 
-                    break;
+        @Override
+        public boolean getHandlePosition(int offset, boolean isLeft, int handleWidth, int padding, int[] outCoors) {
+            LineGeometryCache lineCache = AndroidTextLayout.obtain(mLineCache, mTextView);
+            if (lineCache == null) {
+                return false;
             }
+            mLocationTracker.getLocation(outCoors);
+            outCoors[0] += SelectionGeometry.getHandleLeft(lineCache, offset, isLeft, handleWidth, padding);
+            outCoors[1] += SelectionGeometry.getHandleTop(lineCache, offset) + mTextView.getPaddingTop();
             return true;
         }
 
-        private void update(int curX, int curY, int curRawX, int curRawY) {
-            //获得TextView在屏幕上的位置
-            mTextView.getLocationOnScreen(mTempCoors);
-
-            int oldOffset;
-            if (isLeft) {
-                oldOffset = mSelectionInfo.mStart;
-            } else {
-                oldOffset = mSelectionInfo.mEnd;
-            }
-
-            curX = (int) (curRawX - mTempCoors[0]);
-            //curY = (int) (curRawY - curY - mTempCoors[1] - mTextView.getPaddingBottom() - (mTextView.getLayout().getHeight() * 0.5));
-            curY = curRawY - mTempCoors[1];
-
-            int offset = TextLayoutUtil.getHysteresisOffset(mTextView, curX, curY, oldOffset);
-
-            if (offset != oldOffset) {
-                resetSelectionInfo();
-
-                if (isLeft) {
-                    if (offset > mBeforeDragEnd) {
-                        CursorHandle handle = getCursorHandle(false);
-                        changeDirection();
-                        handle.changeDirection();
-                        mBeforeDragStart = mBeforeDragEnd;
-                        selectText(mBeforeDragEnd, offset);
-                        handle.updateCursorHandle();
-                    } else {
-                        selectText(offset, -1);
-                    }
-                    updateCursorHandle();
-                } else {
-                    if (offset < mBeforeDragStart) {
-                        CursorHandle handle = getCursorHandle(true);
-                        handle.changeDirection();
-                        changeDirection();
-                        mBeforeDragEnd = mBeforeDragStart;
-                        selectText(offset, mBeforeDragStart);
-                        handle.updateCursorHandle();
-                    } else {
-                        selectText(mBeforeDragStart, offset);
-                    }
-                    updateCursorHandle();
-                }
-
+        @Override
+        public boolean getLineTopPosition(int offset, int[] outCoors) {
+            LineGeometryCache lineCache = AndroidTextLayout.obtain(mLineCache, mTextView);
+            if (lineCache == null) {
+                return false;
             }
+            mLocationTracker.getLocation(outCoors);
+            outCoors[0] += lineCache.getHorizontalInLine(offset);
+            outCoors[1] += lineCache.getLineTop(lineCache.getLineForOffset(offset));
+            return true;
         }
 
-        private void updateCursorHandle() {
-            mTextView.getLocationOnScreen(mTempCoors);
-
-            Layout layout = mTextView.getLayout();
-
-            int targetX;
-            int targetY;
-            //cursorHandle.show((int) layout.getPrimaryHorizontal(offset) - (int) layout.getPrimaryHorizontal(layout.getLineStart(layout.getLineForOffset(offset))), layout.getLineBottom(layout.getLineForOffset(offset)));
+        @Override
+        public boolean isOffsetVisible(int offset, boolean atLineBottom) {
+            return SelectableTextHelper.this.isOffsetVisible(offset, atLineBottom);
+        }
 
-            if (isLeft) {
-                targetX = (int) layout.getPrimaryHorizontal(mSelectionInfo.mStart) - (int) layout.getPrimaryHorizontal(layout.getLineStart(layout.getLineForOffset(mSelectionInfo.mStart))) + getExtraX() - mWidth - mPadding;
-                mPopupWindow.update(
-                        targetX,//(int) layout.getPrimaryHorizontal(mSelectionInfo.mStart) + getExtraX() - mWidth - mPadding,
-                        layout.getLineBottom(layout.getLineForOffset(mSelectionInfo.mStart)) + getExtraY() + mTextView.getPaddingTop(),
-                        -1,
-                        -1);
-            } else {
-                targetX = (int) layout.getPrimaryHorizontal(mSelectionInfo.mEnd) - (int) layout.getPrimaryHorizontal(layout.getLineStart(layout.getLineForOffset(mSelectionInfo.mStart))) + getExtraX() - mPadding;
-                mPopupWindow.update(
-                        targetX,//(int) layout.getPrimaryHorizontal(mSelectionInfo.mEnd) + getExtraX() - mPadding,
-                        layout.getLineBottom(layout.getLineForOffset(mSelectionInfo.mEnd)) + getExtraY() + mTextView.getPaddingTop(),
-                        -1,
-                        -1);
+        @Override
+        public int getDragOffset(SelectionGeometry.HandleDrag drag, int rawX, int rawY) {
+            LineGeometryCache lineCache = AndroidTextLayout.obtain(mLineCache, mTextView);
+            if (lineCache == null) {
+                return -1;
             }
+            //获得TextView在屏幕上的位置
+            mLocationTracker.getLocation(mTempCoors);
+            return drag.getDragOffset(lineCache, rawX - mTempCoors[0], rawY - mTempCoors[1], getBoundaryIndex());
         }
 
-        public void show(int x, int y) {
-            mTextView.getLocationOnScreen(mTempCoors);
-            int offset = isLeft ? mWidth : 0;
-            mPopupWindow.showAtLocation(mTextView, Gravity.NO_GRAVITY, x + getExtraX() - offset - mPadding, y + getExtraY() + mTextView.getPaddingTop());
+        @Override
+        public void selectText(int start, int end) {
+            SelectableTextHelper.this.selectText(start, end);
         }
 
-        public int getExtraX() {
-            return mTempCoors[0];
+        @Override
+        public void onHandleDragStarted() {
+            mSpanOperationCount = 0;
         }
 
-        public int getExtraY() {
-            return mTempCoors[1];
+        @Override
+        public void onHandleDragFinished() {
+            if (mMetrics != null) {
+                mMetrics.mSpanOperationCount = mSpanOperationCount;
+                mMetricsListener.onDragFinished(mMetrics);
+            }
         }
 
-        private void changeDirection() {
-            isLeft = !isLeft;
-            invalidate();
+        @Override
+        public void copySelection() {
+            SelectableTextHelper.this.copySelection();
         }
 
-        public void dismiss() {
-            mPopupWindow.dismiss();
+        @Override
+        public void selectAll() {
+            showAllTextSelected();
         }
-    }
-
-    private void printLog(String msg) {
-        Log.e(getClass().getCanonicalName(), msg);
-    }
 
-    private CursorHandle getCursorHandle(boolean isLeft) {
-        if (mStartHandle.isLeft == isLeft) {
-            return mStartHandle;
-        } else {
-            return mEndHandle;
+        @Override
+        public void onViewsReleased() {
+            destroy();
         }
-    }
+    };
 
     public static class Builder {
         private TextView mTextView;
         private int mCursorHandleColor = COLOR_HANDLE;
         private int mSelectedColor = COLOR_SELECTED;
         private float mCursorHandleSizeInDp = 24;
+        private boolean isAdvanceIndexEnabled;
+        private boolean isVsyncCoalescingEnabled;
+        private boolean isSpannableDeferred;
+        private boolean isLargeDocumentMode;
+        private boolean isRichTextCopyEnabled;
+        private boolean isScrollFollowEnabled;
+        private boolean isOverlayRendererEnabled;
+        private boolean isPathHighlightEnabled;
+        private boolean isAutoScrollEnabled;
+        private int mGranularity = GRANULARITY_CHARACTER;
+        private OnSelectionMetricsListener mMetricsListener;
 
         public Builder(TextView textView) {
             mTextView = textView;
         }
 
+        /**
+         * For {@link #attachTo(ViewGroup)}, the TextView is resolved at long-press time.
+         */
+        public Builder() {
+        }
+
         public Builder setCursorHandleColor(@ColorInt int cursorHandleColor) {
             mCursorHandleColor = cursorHandleColor;
             return this;
@@ -629,9 +887,143 @@ public class SelectableTextHelper {
             return this;
         }
 
+        /**
+         * Hit test with cached per-line glyph advances instead of measuring the line on every
+         * touch sample. Lines with bidi text or tabs still go through the Layout, justified text
+         * and text with metric affecting spans always do.
+         */
+        public Builder setAdvanceIndexEnabled(boolean advanceIndexEnabled) {
+            isAdvanceIndexEnabled = advanceIndexEnabled;
+            return this;
+        }
+
+        /**
+         * Apply handle moves once per Choreographer frame with the latest pointer position,
+         * instead of once per ACTION_MOVE. Ignored below API 16.
+         */
+        public Builder setVsyncCoalescingEnabled(boolean vsyncCoalescingEnabled) {
+            isVsyncCoalescingEnabled = vsyncCoalescingEnabled;
+            return this;
+        }
+
+        /**
+         * Keep the TextView's original buffer and switch it to a Spannable only when a
+         * selection is first shown, instead of calling setText() when the helper is built.
+         */
+        public Builder setSpannableDeferred(boolean spannableDeferred) {
+            isSpannableDeferred = spannableDeferred;
+            return this;
+        }
+
+        /**
+         * For multi-megabyte texts: large selections are copied as a content URI served by
+         * {@link SelectionContentProvider} instead of a clip that holds the whole text and has
+         * to fit into one Binder transaction. No String of the selection is built on the main
+         * thread. Editable text is still copied as a String, its chars may change before the
+         * clip is read.
+         */
+        public Builder setLargeDocumentMode(boolean largeDocumentMode) {
+            isLargeDocumentMode = largeDocumentMode;
+            return this;
+        }
+
+        /**
+         * Copy the selection as HTML plus plain text, keeping links, styles and image URIs.
+         * The clip is built on a background thread and set when it is ready, the copy tap
+         * does not wait for it. Below API 16 only the plain text is copied.
+         */
+        public Builder setRichTextCopyEnabled(boolean richTextCopyEnabled) {
+            isRichTextCopyEnabled = richTextCopyEnabled;
+            return this;
+        }
+
+        /**
+         * Keep the handles and the operate window shown while the TextView scrolls and move
+         * them with PopupWindow.update() on every pre-draw, instead of dismissing them on
+         * scroll and showing them again 100ms later. Popups whose offset leaves the visible
+         * area are hidden until it comes back.
+         */
+        public Builder setScrollFollowEnabled(boolean scrollFollowEnabled) {
+            isScrollFollowEnabled = scrollFollowEnabled;
+            return this;
+        }
+
+        /**
+         * Draw the handles and the operate bar in one view on top of the window's decor view,
+         * see {@link SelectionOverlay}, instead of three PopupWindows. Showing, moving and
+         * hiding them then costs an invalidate instead of a WindowManager call. Combine it
+         * with {@link #setScrollFollowEnabled(boolean)} to keep them in place while scrolling.
+         */
+        public Builder setOverlayRendererEnabled(boolean overlayRendererEnabled) {
+            isOverlayRendererEnabled = overlayRendererEnabled;
+            return this;
+        }
+
+        /**
+         * Draw the selection as a cached Path in the TextView's overlay instead of adding a
+         * BackgroundColorSpan to its text, see {@link SelectionHighlight}. The text buffer is
+         * never converted or changed. Ignored below API 18.
+         */
+        public Builder setPathHighlightEnabled(boolean pathHighlightEnabled) {
+            isPathHighlightEnabled = pathHighlightEnabled;
+            return this;
+        }
+
+        /**
+         * Scroll the nearest vertically scrollable parent, a ScrollView, RecyclerView or
+         * ListView, while a handle is dragged into its top or bottom edge, see
+         * {@link EdgeAutoScroller}. Ignored below API 16.
+         */
+        public Builder setAutoScrollEnabled(boolean autoScrollEnabled) {
+            isAutoScrollEnabled = autoScrollEnabled;
+            return this;
+        }
+
+        /**
+         * Snap long-press and handle drags to words, sentences or paragraphs.
+         *
+         * @param granularity one of {@link #GRANULARITY_CHARACTER}, {@link #GRANULARITY_WORD},
+         *                    {@link #GRANULARITY_SENTENCE} or {@link #GRANULARITY_PARAGRAPH}
+         */
+        public Builder setSelectionGranularity(int granularity) {
+            mGranularity = granularity;
+            return this;
+        }
+
+        /**
+         * Reports long-press latency, per-move handle update times, offset lookups, span
+         * operations, PopupWindow calls and vsync overruns of each drag. Nothing is measured
+         * or allocated while no listener is set.
+         */
+        public Builder setMetricsListener(OnSelectionMetricsListener metricsListener) {
+            mMetricsListener = metricsListener;
+            return this;
+        }
+
         public SelectableTextHelper build(boolean showImmediately) {
             return new SelectableTextHelper(this, showImmediately);
         }
+
+        /**
+         * Creates one controller for all the selectable TextViews of container, see
+         * {@link SelectionController}.
+         */
+        public SelectionController attachTo(ViewGroup container) {
+            return new SelectionController(container, this);
+        }
+
+        /**
+         * Creates a selection across all the TextViews under container, see
+         * {@link ContainerSelectionHelper}.
+         */
+        public ContainerSelectionHelper buildForContainer(ViewGroup container) {
+            return new ContainerSelectionHelper(container, mSelectedColor, mCursorHandleColor, mCursorHandleSizeInDp,
+                    isVsyncCoalescingEnabled, isAutoScrollEnabled, isOverlayRendererEnabled, mMetricsListener);
+        }
+
+        SelectableTextHelper buildControlled(TextView textView, SelectionController controller) {
+            return new SelectableTextHelper(this, textView, false, controller);
+        }
     }
 }
 
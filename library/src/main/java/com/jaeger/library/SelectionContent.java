@@ -0,0 +1,56 @@
+package com.jaeger.library;
+
+import android.text.GetChars;
+import android.text.TextUtils;
+
+/**
+ * A read-only view of a range of the selected text. Nothing is copied until
+ * {@link #toString()} is called, the resulting String is cached.
+ */
+class SelectionContent implements CharSequence, GetChars {
+
+    private final CharSequence mText;
+    private final int mStart;
+    private final int mEnd;
+    private String mString;
+
+    SelectionContent(CharSequence text, int start, int end) {
+        mText = text;
+        mStart = start;
+        mEnd = end;
+    }
+
+    @Override
+    public int length() {
+        return mEnd - mStart;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+        }
+        return mText.charAt(mStart + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length() || start > end) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length());
+        }
+        return new SelectionContent(mText, mStart + start, mStart + end);
+    }
+
+    @Override
+    public void getChars(int start, int end, char[] dest, int destoff) {
+        TextUtils.getChars(mText, mStart + start, mStart + end, dest, destoff);
+    }
+
+    @Override
+    public String toString() {
+        if (mString == null) {
+            mString = TextUtils.substring(mText, mStart, mEnd);
+        }
+        return mString;
+    }
+}
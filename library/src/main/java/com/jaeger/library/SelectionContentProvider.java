@@ -0,0 +1,138 @@
+package com.jaeger.library;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Serves large copied selections to the clipboard as a text/plain stream, so the clip itself
+ * only carries a content URI and the text is never pushed through a single Binder transaction.
+ * <p>
+ * Only the most recently published selection is kept, as the {@link SelectionContent} view of
+ * the copied text, so no String of it is built on the main thread. It can be read any number of
+ * times, by a paste, a clipboard preview or a suggestion strip, until a later copy replaces it
+ * and older URIs stop resolving. The chars are copied in chunks from the pipe's background
+ * thread when a clipboard reader opens the URI, which is why only text whose chars never change
+ * is published.
+ */
+public class SelectionContentProvider extends ContentProvider
+        implements ContentProvider.PipeDataWriter<CharSequence> {
+
+    private static final String AUTHORITY_SUFFIX = ".selectabletext";
+    private static final String MIME_TYPE = "text/plain";
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private static final Object sLock = new Object();
+    private static long sContentId;
+    private static CharSequence sContent;
+
+    /**
+     * Makes content readable through the returned URI, replacing the previously published one.
+     * Nothing is copied, content has to be immutable.
+     */
+    static Uri publish(Context context, SelectionContent content) {
+        long id;
+        synchronized (sLock) {
+            id = ++sContentId;
+            sContent = content;
+        }
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(context.getPackageName() + AUTHORITY_SUFFIX)
+                .appendPath(String.valueOf(id))
+                .build();
+    }
+
+    /**
+     * @return the content published as uri, or null if a later copy replaced it
+     */
+    static CharSequence find(Uri uri) {
+        String path = uri.getLastPathSegment();
+        synchronized (sLock) {
+            if (sContent != null && String.valueOf(sContentId).equals(path)) {
+                return sContent;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("read only: " + uri);
+        }
+        CharSequence content = find(uri);
+        if (content == null) {
+            throw new FileNotFoundException("no longer available: " + uri);
+        }
+        return openPipeHelper(uri, MIME_TYPE, null, content, this);
+    }
+
+    @Override
+    public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType, Bundle opts,
+                                CharSequence content) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(output.getFileDescriptor()), "UTF-8");
+            char[] buffer = new char[CHUNK_SIZE];
+            int length = content.length();
+            for (int start = 0; start < length; start += CHUNK_SIZE) {
+                int end = Math.min(start + CHUNK_SIZE, length);
+                TextUtils.getChars(content, start, end, buffer, 0);
+                writer.write(buffer, 0, end - start);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // the reader went away, nothing to do
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException();
+    }
+}
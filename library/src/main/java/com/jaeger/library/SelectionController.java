@@ -0,0 +1,201 @@
+package com.jaeger.library;
+
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+/**
+ * One selection controller for all the selectable TextViews of a RecyclerView, ListView or any
+ * other container.
+ * <p>
+ * Binding a cell only sets the controller's shared touch and long-click listeners on it, no
+ * helper is created until the user long-presses a TextView. At that point a
+ * {@link SelectableTextHelper} is built for the touched view only. When its selection goes
+ * away the helper is kept and moved to the next touched view instead of building another one.
+ * <p>
+ * A selection whose cell is recycled is remembered as a fingerprint of the text and its
+ * offsets. It comes back when a bound TextView with the same text is attached, whether it was
+ * bound again or comes back from a view cache. Only texts of the same length are hashed.
+ * <p>
+ * The helpers use the Builder's highlight mode. With the span highlight a cell's text is
+ * converted to a Spannable on its first selection, with
+ * {@link SelectableTextHelper.Builder#setPathHighlightEnabled(boolean)} it is left as bound.
+ * <pre>
+ * SelectionController controller = new SelectableTextHelper.Builder()
+ *         .setSelectedColor(color)
+ *         .attachTo(recyclerView);
+ *
+ * // in onBindViewHolder
+ * controller.bind(holder.textView);
+ * </pre>
+ */
+public class SelectionController {
+
+    private final ViewGroup mContainer;
+    private final SelectableTextHelper.Builder mBuilder;
+    private OnSelectListener mSelectListener;
+
+    private SelectableTextHelper mActiveHelper;
+    // the helper of the last selection, reused for the next one
+    private SelectableTextHelper mIdleHelper;
+    private int mTouchX;
+    private int mTouchY;
+
+    // the selection of a recycled cell
+    private boolean isSelectionSaved;
+    private int mSavedTextLength;
+    private long mSavedFingerprint;
+    private int mSavedStart;
+    private int mSavedEnd;
+
+    private final View.OnTouchListener mOnTouchListener = new View.OnTouchListener() {
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            mTouchX = (int) event.getX();
+            mTouchY = (int) event.getY();
+            return false;
+        }
+    };
+
+    private final View.OnLongClickListener mOnLongClickListener = new View.OnLongClickListener() {
+        @Override
+        public boolean onLongClick(View v) {
+            showSelectView((TextView) v, mTouchX, mTouchY);
+            return true;
+        }
+    };
+
+    // the text of a cell is final once it is attached, also after a rebind
+    private final View.OnAttachStateChangeListener mCellAttachListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(View v) {
+            if (isSelectionSaved) {
+                restoreSelection((TextView) v);
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(View v) {
+        }
+    };
+
+    SelectionController(ViewGroup container, SelectableTextHelper.Builder builder) {
+        mContainer = container;
+        mBuilder = builder;
+        mContainer.addOnAttachStateChangeListener(new View.OnAttachStateChangeListener() {
+            @Override
+            public void onViewAttachedToWindow(View v) {
+            }
+
+            @Override
+            public void onViewDetachedFromWindow(View v) {
+                clearSelection();
+                mIdleHelper = null;
+            }
+        });
+    }
+
+    /**
+     * Makes textView selectable, cheap enough to call from every onBindViewHolder/getView. Call
+     * it after setting the text if the cell may be bound again while it is attached.
+     */
+    public void bind(TextView textView) {
+        textView.setOnTouchListener(mOnTouchListener);
+        textView.setOnLongClickListener(mOnLongClickListener);
+        // added once however often the cell is bound
+        textView.removeOnAttachStateChangeListener(mCellAttachListener);
+        textView.addOnAttachStateChangeListener(mCellAttachListener);
+        if (isSelectionSaved && textView.getWindowToken() != null) {
+            restoreSelection(textView);
+        }
+    }
+
+    /**
+     * Stops textView from being selectable and drops its selection, if it has the active one.
+     */
+    public void unbind(TextView textView) {
+        textView.setOnTouchListener(null);
+        textView.setOnLongClickListener(null);
+        textView.removeOnAttachStateChangeListener(mCellAttachListener);
+        if (mActiveHelper != null && mActiveHelper.getTextView() == textView) {
+            mActiveHelper.recycleSelection();
+            mActiveHelper.destroy();
+        }
+    }
+
+    public void setSelectListener(OnSelectListener selectListener) {
+        mSelectListener = selectListener;
+        if (mActiveHelper != null) {
+            mActiveHelper.setSelectListener(selectListener);
+        }
+    }
+
+    /**
+     * Hides the active selection, if any, and forgets the one of a recycled cell.
+     */
+    public void clearSelection() {
+        isSelectionSaved = false;
+        if (mActiveHelper != null) {
+            mActiveHelper.destroy();
+        }
+    }
+
+    /**
+     * @return the TextView holding the active selection, or null
+     */
+    public TextView getSelectedTextView() {
+        return mActiveHelper == null ? null : mActiveHelper.getTextView();
+    }
+
+    private void showSelectView(TextView textView, int x, int y) {
+        clearSelection();
+        obtainHelper(textView).showSelectView(x, y);
+    }
+
+    private SelectableTextHelper obtainHelper(TextView textView) {
+        if (mIdleHelper != null) {
+            mActiveHelper = mIdleHelper;
+            mIdleHelper = null;
+            mActiveHelper.rebind(textView, this);
+        } else {
+            mActiveHelper = mBuilder.buildControlled(textView, this);
+        }
+        mActiveHelper.setSelectListener(mSelectListener);
+        return mActiveHelper;
+    }
+
+    /**
+     * Shows the saved selection on textView if it holds the same text.
+     */
+    private void restoreSelection(TextView textView) {
+        CharSequence text = textView.getText();
+        // the length rules out almost every other cell before anything is hashed
+        if (text.length() != mSavedTextLength || HighlightStore.fingerprint(text) != mSavedFingerprint) {
+            return;
+        }
+        int start = mSavedStart;
+        int end = mSavedEnd;
+        clearSelection();
+        obtainHelper(textView).restoreSelection(start, end);
+    }
+
+    /**
+     * Remembers the selection start to end of textView, which is being recycled.
+     */
+    void onSelectionRecycled(TextView textView, int start, int end) {
+        CharSequence text = textView.getText();
+        isSelectionSaved = true;
+        mSavedTextLength = text.length();
+        mSavedFingerprint = HighlightStore.fingerprint(text);
+        mSavedStart = start;
+        mSavedEnd = end;
+    }
+
+    void onHelperDestroyed(SelectableTextHelper helper) {
+        if (mActiveHelper == helper) {
+            mActiveHelper = null;
+            mIdleHelper = helper;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.jaeger.library;
+
+/**
+ * The offset, hysteresis and handle placement math of a selection and the state machine of a
+ * handle drag, in plain Java on top of a {@link LineGeometryCache}. Coordinates are relative to
+ * the text area, the caller maps them to and from the screen.
+ */
+class SelectionGeometry {
+
+    private SelectionGeometry() {
+    }
+
+    /**
+     * @return the offset of the char under (x, y), never the insertion point after it
+     */
+    static int getPreciseOffset(LineGeometryCache lineCache, int x, int y) {
+        int topVisibleLine = lineCache.getLineForVertical(y);
+
+        x = x + (int) lineCache.getLineLeft(topVisibleLine);
+
+        int offset = lineCache.getOffsetForHorizontal(topVisibleLine, x);
+
+        int offsetX = (int) lineCache.getPrimaryHorizontal(offset);
+
+        if (offsetX > x) {
+            return lineCache.getOffsetToLeftOf(offset);
+        } else {
+            return offset;
+        }
+    }
+
+    /**
+     * @return the offset a handle dragged to (x, y) lands on, staying on the line of
+     * previousOffset until the pointer is half a line away from it
+     */
+    static int getHysteresisOffset(LineGeometryCache lineCache, int x, int y, int previousOffset) {
+        int line = lineCache.getLineForVertical(y);
+
+        int originalX = x;
+        x = originalX + (int) lineCache.getLineLeft(line);
+
+        // The "HACK BLOCK"S in this function is required because of how Android Layout for
+        // TextView works - if 'offset' equals to the last character of a line, then
+        //
+        // * getLineForOffset(offset) will result the NEXT line
+        // * getPrimaryHorizontal(offset) will return 0 because the next insertion point is on the next line
+        // * getOffsetForHorizontal(line, x) will not return the last offset of a line no matter where x is
+        // These are highly undesired and is worked around with the HACK BLOCK
+        //
+        // @see Moon+ Reader/Color Note - see how it can't select the last character of a line unless you move
+        // the cursor to the beginning of the next line.
+        //
+        ////////////////////HACK BLOCK////////////////////////////////////////////////////
+
+        if (isEndOfLineOffset(lineCache, previousOffset)) {
+            // we have to minus one from the offset so that the code below to find
+            // the previous line can work correctly.
+            int left = (int) lineCache.getPrimaryHorizontal(previousOffset - 1);
+            int right = (int) lineCache.getLineRight(line);
+            int threshold = (right - left) / 2; // half the width of the last character
+            if (x > right - threshold) {
+                previousOffset -= 1;
+            }
+        }
+        ///////////////////////////////////////////////////////////////////////////////////
+
+        final int previousLine = lineCache.getLineForOffset(previousOffset);
+        final int previousLineTop = lineCache.getLineTop(previousLine);
+        final int previousLineBottom = lineCache.getLineBottom(previousLine);
+        final int hysteresisThreshold = (previousLineBottom - previousLineTop) / 2;
+
+        // If new line is just before or after previous line and y position is less than
+        // hysteresisThreshold away from previous line, keep cursor on previous line.
+        if (((line == previousLine + 1) && ((y - previousLineBottom) < hysteresisThreshold))
+                || ((line == previousLine - 1) && ((previousLineTop - y) < hysteresisThreshold))) {
+            line = previousLine;
+        }
+
+        x = originalX + (int) lineCache.getLineLeft(line);
+
+        int offset = lineCache.getOffsetForHorizontal(line, x);
+
+        // This allow the user to select the last character of a line without moving the
+        // cursor to the next line. (As Layout.getOffsetForHorizontal does not return the
+        // offset of the last character of the specified line)
+        //
+        // But this function will probably get called again immediately, must decrement the offset
+        // by 1 to compensate for the change made below. (see previous HACK BLOCK)
+        /////////////////////HACK BLOCK///////////////////////////////////////////////////
+        if (offset < lineCache.getTextLength() - 1) {
+            if (isEndOfLineOffset(lineCache, offset + 1)) {
+                int left = (int) lineCache.getPrimaryHorizontal(offset);
+                int right = (int) lineCache.getLineRight(line);
+                int threshold = (right - left) / 2; // half the width of the last character
+                if (x > right - threshold) {
+                    offset += 1;
+                }
+            }
+        }
+        //////////////////////////////////////////////////////////////////////////////////
+
+        return offset;
+    }
+
+    static boolean isEndOfLineOffset(LineGeometryCache lineCache, int offset) {
+        return offset > 0 && lineCache.getLineForOffset(offset) == lineCache.getLineForOffset(offset - 1) + 1;
+    }
+
+    /**
+     * @return the left of a handle for offset, the start handle hangs to the left of the
+     * insertion point and the end handle to the right
+     */
+    static int getHandleLeft(LineGeometryCache lineCache, int offset, boolean isLeft, int handleWidth, int padding) {
+        return lineCache.getHorizontalInLine(offset) - (isLeft ? handleWidth : 0) - padding;
+    }
+
+    /**
+     * @return the top of a handle for offset, the bottom of its line
+     */
+    static int getHandleTop(LineGeometryCache lineCache, int offset) {
+        return lineCache.getLineBottom(lineCache.getLineForOffset(offset));
+    }
+
+    /**
+     * @return whether a handle dragged to offset has crossed the other end of the selection,
+     * so that the handles have to swap roles
+     */
+    static boolean isHandleCrossing(boolean isLeft, int offset, int beforeDragStart, int beforeDragEnd) {
+        return isLeft ? offset > beforeDragEnd : offset < beforeDragStart;
+    }
+
+    /**
+     * The state of one handle drag. The other end of the selection, the anchor, stays where it
+     * was when the drag started. The dragged end follows the pointer with hysteresis and, once
+     * it is moved past the anchor, the handles swap roles: the start handle becomes the end one
+     * and the other way round.
+     */
+    static final class HandleDrag {
+        private int mAnchor;
+        private int mOffset;
+        private boolean isLeft;
+
+        /**
+         * Starts dragging the start (isLeft) or end handle of the selection start to end.
+         */
+        void start(boolean isLeft, int start, int end) {
+            this.isLeft = isLeft;
+            mAnchor = isLeft ? end : start;
+            mOffset = isLeft ? start : end;
+        }
+
+        /**
+         * @return the offset the dragged end lands on for the pointer at (x, y), snapped to
+         * boundaryIndex on the far side of the anchor if it is not null
+         */
+        int getDragOffset(LineGeometryCache lineCache, int x, int y, TextBoundaryIndex boundaryIndex) {
+            int offset = getHysteresisOffset(lineCache, x, y, mOffset);
+            if (boundaryIndex == null) {
+                return offset;
+            }
+            return offset < mAnchor ? boundaryIndex.floor(offset) : boundaryIndex.ceiling(offset);
+        }
+
+        /**
+         * Moves the dragged end to offset, swapping the roles of the handles when it crossed
+         * the anchor.
+         *
+         * @return false if the selection did not change
+         */
+        boolean moveTo(int offset) {
+            if (offset == mOffset) {
+                return false;
+            }
+            mOffset = offset;
+            if (isHandleCrossing(isLeft, offset, mAnchor, mAnchor)) {
+                isLeft = !isLeft;
+            }
+            return true;
+        }
+
+        /**
+         * @return the offset of the dragged end
+         */
+        int getOffset() {
+            return mOffset;
+        }
+
+        /**
+         * @return whether the dragged handle is the start handle now
+         */
+        boolean isLeft() {
+            return isLeft;
+        }
+
+        int getStart() {
+            return isLeft ? mOffset : mAnchor;
+        }
+
+        int getEnd() {
+            return isLeft ? mAnchor : mOffset;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.jaeger.library;
+
+import android.annotation.TargetApi;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.text.Layout;
+import android.widget.TextView;
+
+/**
+ * Draws the selection of a TextView from a cached {@link Path} in the TextView's ViewOverlay,
+ * so changing the selection never touches the text buffer: no span change, no SpanWatcher
+ * callbacks, no reflow and no redraw of the text itself.
+ * <p>
+ * The path is built with {@link Layout#getSelectionPath(int, int, Path)} once per range or
+ * layout change.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+class SelectionHighlight extends Drawable {
+
+    private TextView mTextView;
+    private final Paint mPaint = new Paint();
+    private final Path mPath = new Path();
+
+    private Layout mLayout;
+    private int mStart = -1;
+    private int mEnd = -1;
+    private boolean isAttached;
+
+    SelectionHighlight(TextView textView, int color) {
+        mTextView = textView;
+        mPaint.setColor(color);
+        mPaint.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * Draws into the overlay of textView from now on, the current highlight is cleared.
+     */
+    void setTextView(TextView textView) {
+        clear();
+        mTextView = textView;
+    }
+
+    static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    int getStart() {
+        return mStart;
+    }
+
+    int getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * Highlights start to end of the TextView's current layout, showing the highlight if needed.
+     *
+     * @return false if nothing changed
+     */
+    boolean setRange(int start, int end) {
+        Layout layout = mTextView.getLayout();
+        if (layout == mLayout && start == mStart && end == mEnd && isAttached) {
+            return false;
+        }
+        mStart = start;
+        mEnd = end;
+        rebuild(layout);
+        if (!isAttached) {
+            isAttached = true;
+            mTextView.getOverlay().add(this);
+        }
+        return true;
+    }
+
+    /**
+     * Rebuilds the path if the TextView has a new layout since the range was set.
+     */
+    void refresh() {
+        if (isAttached && mTextView.getLayout() != mLayout) {
+            rebuild(mTextView.getLayout());
+        }
+    }
+
+    void clear() {
+        mStart = -1;
+        mEnd = -1;
+        mLayout = null;
+        mPath.reset();
+        if (isAttached) {
+            isAttached = false;
+            mTextView.getOverlay().remove(this);
+        }
+    }
+
+    private void rebuild(Layout layout) {
+        mLayout = layout;
+        mPath.reset();
+        if (layout != null) {
+            layout.getSelectionPath(mStart, mEnd, mPath);
+            // the overlay is drawn in the scrolled coordinates of the TextView, like its text
+            setBounds(0, 0, mTextView.getTotalPaddingLeft() + layout.getWidth() + mTextView.getTotalPaddingRight(),
+                    mTextView.getTotalPaddingTop() + layout.getHeight() + mTextView.getTotalPaddingBottom());
+        }
+        invalidateSelf();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mLayout == null) {
+            return;
+        }
+        canvas.save();
+        canvas.translate(mTextView.getTotalPaddingLeft(), mTextView.getTotalPaddingTop());
+        canvas.drawPath(mPath, mPaint);
+        canvas.restore();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
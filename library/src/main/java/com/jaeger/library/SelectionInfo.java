@@ -9,5 +9,8 @@ package com.jaeger.library;
 public class SelectionInfo {
     public int mStart;
     public int mEnd;
-    public String mSelectionContent;
+    /**
+     * Lazy view of the selected text, call toString() to get a copy.
+     */
+    public CharSequence mSelectionContent;
 }
@@ -0,0 +1,233 @@
+package com.jaeger.library;
+
+import android.content.Context;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Tracks the selections of all windows without keeping any of them alive.
+ * <p>
+ * Every window, keyed weakly by its root view, remembers the helper that last showed or was
+ * set up to show a selection in it, and the {@link ContainerSelectionHelper} that last showed
+ * one. The helper that currently shows its selection is kept
+ * separately, so finding the active selection is a field read. Only one selection is visible
+ * at a time, so every helper and container selection shares one pair of {@link CursorHandle}s
+ * and one {@link OperateWindow}, bound to the {@link SelectionViewHost} that shows it. All
+ * helpers are held through WeakReferences, a destroyed activity's TextViews and their helpers
+ * can be collected as soon as nothing else refers to them. Main thread only.
+ */
+public class SelectionManager {
+
+    // windows above this count get their dead entries purged before another one is added
+    private static final int MAX_WINDOWS = 8;
+
+    private static final SelectionManager sInstance = new SelectionManager();
+
+    private final WeakHashMap<View, WeakReference<SelectableTextHelper>> mWindowHelpers =
+            new WeakHashMap<View, WeakReference<SelectableTextHelper>>();
+    private final WeakHashMap<View, WeakReference<ContainerSelectionHelper>> mWindowContainers =
+            new WeakHashMap<View, WeakReference<ContainerSelectionHelper>>();
+    private WeakReference<SelectableTextHelper> mLastHelper;
+    private WeakReference<SelectableTextHelper> mActiveHelper;
+
+    // created on first use
+    private OperateWindow mOperateWindow;
+    private CursorHandle mStartHandle;
+    private CursorHandle mEndHandle;
+    private WeakReference<SelectionViewHost> mViewOwner;
+
+    private SelectionManager() {
+    }
+
+    public static SelectionManager getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * @return the helper that shows the visible selection, or null
+     */
+    public SelectableTextHelper getActiveHelper() {
+        return mActiveHelper == null ? null : mActiveHelper.get();
+    }
+
+    /**
+     * @return the helper that last showed or was set up to show a selection in the window of
+     * view, or null
+     */
+    public SelectableTextHelper getWindowHelper(View view) {
+        WeakReference<SelectableTextHelper> reference = mWindowHelpers.get(view.getRootView());
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Hides the selection of the window of view, if it has a visible one.
+     */
+    public void hideSelection(View view) {
+        SelectableTextHelper helper = getWindowHelper(view);
+        if (helper != null) {
+            helper.hideSelection();
+        }
+        WeakReference<ContainerSelectionHelper> reference = mWindowContainers.get(view.getRootView());
+        ContainerSelectionHelper container = reference == null ? null : reference.get();
+        if (container != null) {
+            container.hideSelectView();
+        }
+    }
+
+    /**
+     * @return the number of windows with an entry, for leak checks in tests
+     */
+    int getWindowCount() {
+        purge();
+        return mWindowHelpers.size();
+    }
+
+    /**
+     * @return the helper the static SelectableTextHelper methods work on, the one most recently
+     * set up or shown in any window
+     */
+    SelectableTextHelper getLastHelper() {
+        return mLastHelper == null ? null : mLastHelper.get();
+    }
+
+    void setWindowHelper(SelectableTextHelper helper) {
+        View root = helper.getTextView().getRootView();
+        WeakReference<SelectableTextHelper> reference = mWindowHelpers.get(root);
+        if (reference == null || reference.get() != helper) {
+            if (mWindowHelpers.size() >= MAX_WINDOWS) {
+                purge();
+            }
+            reference = new WeakReference<SelectableTextHelper>(helper);
+            mWindowHelpers.put(root, reference);
+        }
+        mLastHelper = reference;
+    }
+
+    /**
+     * Remembers container as the container selection of its window, called when it is shown.
+     */
+    void setWindowContainer(ContainerSelectionHelper container) {
+        View root = container.getContainer().getRootView();
+        WeakReference<ContainerSelectionHelper> reference = mWindowContainers.get(root);
+        if (reference == null || reference.get() != container) {
+            if (mWindowContainers.size() >= MAX_WINDOWS) {
+                purge();
+            }
+            mWindowContainers.put(root, new WeakReference<ContainerSelectionHelper>(container));
+        }
+    }
+
+    void setActiveHelper(SelectableTextHelper helper) {
+        if (getActiveHelper() != helper) {
+            mActiveHelper = helper == null ? null : new WeakReference<SelectableTextHelper>(helper);
+        }
+    }
+
+    /**
+     * Binds the shared handles and operate window to host, taking them from the selection that
+     * holds them. overlay is where they are drawn, null for their PopupWindows.
+     */
+    void acquireViews(SelectionViewHost host, SelectionOverlay overlay) {
+        SelectionViewHost owner = getViewOwner();
+        if (owner != null && owner != host) {
+            owner.onViewsReleased();
+        }
+        Context context = host.getAnchorView().getContext().getApplicationContext();
+        if (mOperateWindow == null) mOperateWindow = new OperateWindow(context);
+        if (mStartHandle == null) mStartHandle = new CursorHandle(context);
+        if (mEndHandle == null) mEndHandle = new CursorHandle(context);
+        if (getViewOwner() != host) {
+            mViewOwner = new WeakReference<SelectionViewHost>(host);
+        }
+        mOperateWindow.bind(host, overlay);
+        mStartHandle.bind(host, true, overlay);
+        mEndHandle.bind(host, false, overlay);
+    }
+
+    /**
+     * Detaches the shared views from host, if it still holds them.
+     */
+    void releaseViews(SelectionViewHost host) {
+        if (getViewOwner() != host) {
+            return;
+        }
+        mViewOwner = null;
+        mOperateWindow.bind(null, null);
+        mStartHandle.bind(null, true, null);
+        mEndHandle.bind(null, false, null);
+    }
+
+    /**
+     * @return the selection the shared views are bound to, or null
+     */
+    SelectionViewHost getViewOwner() {
+        return mViewOwner == null ? null : mViewOwner.get();
+    }
+
+    OperateWindow getOperateWindow() {
+        return mOperateWindow;
+    }
+
+    /**
+     * @return the shared handle that currently drags the start (isLeft) or end of the selection
+     */
+    CursorHandle getCursorHandle(boolean isLeft) {
+        return mStartHandle.isLeft() == isLeft ? mStartHandle : mEndHandle;
+    }
+
+    /**
+     * Forgets helper everywhere, called when its TextView leaves the window.
+     */
+    void remove(SelectableTextHelper helper) {
+        if (getActiveHelper() == helper) {
+            mActiveHelper = null;
+        }
+        if (getLastHelper() == helper) {
+            mLastHelper = null;
+        }
+        Iterator<Map.Entry<View, WeakReference<SelectableTextHelper>>> iterator = mWindowHelpers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().get() == helper) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets container, called when it leaves the window.
+     */
+    void remove(ContainerSelectionHelper container) {
+        Iterator<Map.Entry<View, WeakReference<ContainerSelectionHelper>>> iterator =
+                mWindowContainers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getValue().get() == container) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Drops the entries whose helper was collected or whose view is no longer in a window.
+     */
+    private void purge() {
+        Iterator<Map.Entry<View, WeakReference<SelectableTextHelper>>> iterator = mWindowHelpers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            SelectableTextHelper helper = iterator.next().getValue().get();
+            if (helper == null || helper.getTextView().getWindowToken() == null) {
+                iterator.remove();
+            }
+        }
+        Iterator<Map.Entry<View, WeakReference<ContainerSelectionHelper>>> containers =
+                mWindowContainers.entrySet().iterator();
+        while (containers.hasNext()) {
+            ContainerSelectionHelper container = containers.next().getValue().get();
+            if (container == null || container.getContainer().getWindowToken() == null) {
+                containers.remove();
+            }
+        }
+    }
+}
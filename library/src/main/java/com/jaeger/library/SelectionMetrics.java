@@ -0,0 +1,105 @@
+package com.jaeger.library;
+
+/**
+ * Performance counters of one {@link SelectableTextHelper}, kept in primitive fields and only
+ * allocated when an {@link OnSelectionMetricsListener} is installed.
+ * <p>
+ * Drag counters are reset when a handle is touched, the PopupWindow counters add up over the
+ * lifetime of the helper.
+ */
+public class SelectionMetrics {
+
+    long mLongPressNanos;
+    long mLongPressToShownNanos;
+
+    int mMoveCount;
+    long mMoveTotalNanos;
+    long mMoveMaxNanos;
+    int mOffsetLookupCount;
+    int mSpanOperationCount;
+    int mVsyncOverrunCount;
+
+    int mPopupShowCount;
+    int mPopupDismissCount;
+    int mPopupUpdateCount;
+
+    void resetDrag() {
+        mMoveCount = 0;
+        mMoveTotalNanos = 0;
+        mMoveMaxNanos = 0;
+        mOffsetLookupCount = 0;
+        mSpanOperationCount = 0;
+        mVsyncOverrunCount = 0;
+    }
+
+    void onMove(long nanos) {
+        mMoveCount++;
+        mMoveTotalNanos += nanos;
+        if (nanos > mMoveMaxNanos) {
+            mMoveMaxNanos = nanos;
+        }
+    }
+
+    /**
+     * @return nanoseconds from the long-press to the handles being shown, including the layout
+     * pass a deferred Spannable conversion waits for
+     */
+    public long getLongPressToShownNanos() {
+        return mLongPressToShownNanos;
+    }
+
+    /**
+     * @return the number of handle position updates in the last drag
+     */
+    public int getMoveCount() {
+        return mMoveCount;
+    }
+
+    /**
+     * @return the total time spent in handle position updates in the last drag
+     */
+    public long getMoveTotalNanos() {
+        return mMoveTotalNanos;
+    }
+
+    /**
+     * @return the slowest handle position update of the last drag
+     */
+    public long getMoveMaxNanos() {
+        return mMoveMaxNanos;
+    }
+
+    /**
+     * @return the number of touch position to offset lookups in the last drag
+     */
+    public int getOffsetLookupCount() {
+        return mOffsetLookupCount;
+    }
+
+    /**
+     * @return the number of setSpan/removeSpan calls on the highlight in the last drag
+     */
+    public int getSpanOperationCount() {
+        return mSpanOperationCount;
+    }
+
+    /**
+     * @return the number of frames in the last drag that came later than one and a half vsync
+     * intervals after the previous one, always 0 below API 16
+     */
+    public int getVsyncOverrunCount() {
+        return mVsyncOverrunCount;
+    }
+
+    public int getPopupShowCount() {
+        return mPopupShowCount;
+    }
+
+    public int getPopupDismissCount() {
+        return mPopupDismissCount;
+    }
+
+    public int getPopupUpdateCount() {
+        return mPopupUpdateCount;
+    }
+}
@@ -0,0 +1,190 @@
+package com.jaeger.library;
+
+import android.graphics.Canvas;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+
+/**
+ * Draws the selection handles and the operate bar of a window in one full-size view on top of
+ * its decor view, instead of one PopupWindow each. Moving an item only invalidates this view,
+ * so a drag causes no WindowManager calls and at most one redraw per frame.
+ * <p>
+ * Items are detached views that were measured and laid out by their owner. Touches are hit
+ * tested in-process: a touch on a handle is dispatched to it for the whole gesture, a tap on
+ * the operate bar clicks the child under it, any other touch falls through to the views below.
+ */
+class SelectionOverlay extends View {
+
+    private final ViewGroup mRoot;
+    private final ArrayList<View> mItems = new ArrayList<View>(3);
+    // item positions in overlay coordinates, parallel to mItems
+    private final ArrayList<int[]> mPositions = new ArrayList<int[]>(3);
+    private final int[] mTempCoors = new int[2];
+
+    private View mTouchTarget;
+    private View mPressedChild;
+    private int mTouchTargetLeft;
+    private int mTouchTargetTop;
+
+    private final Runnable mRemoveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (mItems.isEmpty() && getParent() != null) {
+                mRoot.removeView(SelectionOverlay.this);
+            }
+        }
+    };
+
+    private SelectionOverlay(ViewGroup root) {
+        super(root.getContext());
+        mRoot = root;
+    }
+
+    /**
+     * @return the overlay of anchor's window, added to its decor view if needed, or null if
+     * anchor is not attached to a window with a ViewGroup root
+     */
+    static SelectionOverlay obtain(View anchor) {
+        if (anchor.getWindowToken() == null || !(anchor.getRootView() instanceof ViewGroup)) {
+            return null;
+        }
+        ViewGroup root = (ViewGroup) anchor.getRootView();
+        for (int i = root.getChildCount() - 1; i >= 0; i--) {
+            if (root.getChildAt(i) instanceof SelectionOverlay) {
+                return (SelectionOverlay) root.getChildAt(i);
+            }
+        }
+        SelectionOverlay overlay = new SelectionOverlay(root);
+        overlay.addToRoot();
+        return overlay;
+    }
+
+    private void addToRoot() {
+        mRoot.addView(this, new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT));
+    }
+
+    /**
+     * Shows item with its top left corner at (screenX, screenY), or moves it there.
+     */
+    void show(View item, int screenX, int screenY) {
+        getLocationOnScreen(mTempCoors);
+        int index = mItems.indexOf(item);
+        int[] position;
+        if (index < 0) {
+            removeCallbacks(mRemoveRunnable);
+            if (getParent() == null) {
+                // removed after its last item was hidden, scroll follow shows them again
+                addToRoot();
+            }
+            mItems.add(item);
+            position = new int[2];
+            mPositions.add(position);
+        } else {
+            position = mPositions.get(index);
+            if (position[0] == screenX - mTempCoors[0] && position[1] == screenY - mTempCoors[1]) {
+                return;
+            }
+        }
+        position[0] = screenX - mTempCoors[0];
+        position[1] = screenY - mTempCoors[1];
+        invalidate();
+    }
+
+    void hide(View item) {
+        int index = mItems.indexOf(item);
+        if (index < 0) {
+            return;
+        }
+        mItems.remove(index);
+        mPositions.remove(index);
+        if (mTouchTarget == item) {
+            mTouchTarget = null;
+            mPressedChild = null;
+        }
+        invalidate();
+        if (mItems.isEmpty()) {
+            // not while a touch on this overlay is being dispatched
+            post(mRemoveRunnable);
+        }
+    }
+
+    boolean isShowing(View item) {
+        return mItems.contains(item);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        for (int i = 0; i < mItems.size(); i++) {
+            int[] position = mPositions.get(i);
+            canvas.save();
+            canvas.translate(position[0], position[1]);
+            mItems.get(i).draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        int x = (int) event.getX();
+        int y = (int) event.getY();
+        if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            mTouchTarget = null;
+            mPressedChild = null;
+            // the last shown item is drawn on top
+            for (int i = mItems.size() - 1; i >= 0; i--) {
+                View item = mItems.get(i);
+                int[] position = mPositions.get(i);
+                if (x >= position[0] && x < position[0] + item.getWidth()
+                        && y >= position[1] && y < position[1] + item.getHeight()) {
+                    mTouchTarget = item;
+                    mTouchTargetLeft = position[0];
+                    mTouchTargetTop = position[1];
+                    break;
+                }
+            }
+            if (mTouchTarget == null) {
+                return false;
+            }
+            if (mTouchTarget instanceof ViewGroup) {
+                mPressedChild = findChildAt((ViewGroup) mTouchTarget, x - mTouchTargetLeft, y - mTouchTargetTop);
+                return true;
+            }
+        }
+        View target = mTouchTarget;
+        if (target == null) {
+            return false;
+        }
+        if (target instanceof ViewGroup) {
+            // detached views can not post their own click, so the bar is clicked from here
+            if (event.getActionMasked() == MotionEvent.ACTION_UP && mPressedChild != null
+                    && mPressedChild == findChildAt((ViewGroup) target, x - mTouchTargetLeft, y - mTouchTargetTop)) {
+                mPressedChild.performClick();
+            }
+        } else {
+            event.offsetLocation(-mTouchTargetLeft, -mTouchTargetTop);
+            target.dispatchTouchEvent(event);
+            event.offsetLocation(mTouchTargetLeft, mTouchTargetTop);
+        }
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mTouchTarget = null;
+            mPressedChild = null;
+        }
+        return true;
+    }
+
+    private static View findChildAt(ViewGroup group, int x, int y) {
+        for (int i = group.getChildCount() - 1; i >= 0; i--) {
+            View child = group.getChildAt(i);
+            if (child.isClickable() && x >= child.getLeft() && x < child.getRight()
+                    && y >= child.getTop() && y < child.getBottom()) {
+                return child;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,74 @@
+package com.jaeger.library;
+
+import android.view.View;
+
+/**
+ * What the shared {@link CursorHandle}s and {@link OperateWindow} need from the selection they
+ * are bound to, a {@link SelectableTextHelper} or a {@link ContainerSelectionHelper}. Offsets
+ * are the selection's own, positions are screen coordinates.
+ */
+interface SelectionViewHost {
+
+    /**
+     * @return the view the popups are shown for, its window and scrolling parent are used
+     */
+    View getAnchorView();
+
+    int getCursorHandleSize();
+
+    int getCursorHandleColor();
+
+    /**
+     * @return the metrics of the selection, or null when no listener is installed
+     */
+    SelectionMetrics getMetrics();
+
+    ScreenLocationTracker getLocationTracker();
+
+    boolean isVsyncCoalescingEnabled();
+
+    boolean isAutoScrollEnabled();
+
+    int getSelectionStart();
+
+    int getSelectionEnd();
+
+    /**
+     * Writes the top left corner of a handle for offset into outCoors.
+     *
+     * @return false if there is no layout to place it with
+     */
+    boolean getHandlePosition(int offset, boolean isLeft, int handleWidth, int padding, int[] outCoors);
+
+    /**
+     * Writes the insertion point before offset, at the top of its line, into outCoors.
+     *
+     * @return false if there is no layout to place it with
+     */
+    boolean getLineTopPosition(int offset, int[] outCoors);
+
+    /**
+     * @return whether the top (or bottom) of the line of offset is in the visible area
+     */
+    boolean isOffsetVisible(int offset, boolean atLineBottom);
+
+    /**
+     * @return the offset drag lands on for the pointer at (rawX, rawY), -1 if there is none
+     */
+    int getDragOffset(SelectionGeometry.HandleDrag drag, int rawX, int rawY);
+
+    void selectText(int start, int end);
+
+    void onHandleDragStarted();
+
+    void onHandleDragFinished();
+
+    void copySelection();
+
+    void selectAll();
+
+    /**
+     * The shared views were taken by another selection, this one has to be hidden.
+     */
+    void onViewsReleased();
+}
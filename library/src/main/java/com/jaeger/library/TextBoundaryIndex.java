@@ -0,0 +1,95 @@
+package com.jaeger.library;
+
+import java.text.BreakIterator;
+import java.util.Arrays;
+
+/**
+ * Sorted word, sentence or paragraph boundaries of one text, built once with
+ * {@link BreakIterator} and queried with binary searches while the handles move.
+ * <p>
+ * Plain Java on purpose, the benchmarks module compiles it for the desktop JVM.
+ */
+class TextBoundaryIndex {
+
+    static final int CHARACTER = 0;
+    static final int WORD = 1;
+    static final int SENTENCE = 2;
+    static final int PARAGRAPH = 3;
+
+    private final CharSequence mText;
+    private final int mTextLength;
+    private final int mGranularity;
+    private int[] mBoundaries = new int[16];
+    private int mCount;
+
+    TextBoundaryIndex(CharSequence text, int granularity) {
+        mText = text;
+        mTextLength = text.length();
+        mGranularity = granularity;
+        if (granularity == PARAGRAPH) {
+            add(0);
+            for (int i = 0; i < mTextLength - 1; i++) {
+                if (text.charAt(i) == '\n') {
+                    add(i + 1);
+                }
+            }
+            if (mTextLength > 0) {
+                add(mTextLength);
+            }
+        } else {
+            BreakIterator iterator = granularity == SENTENCE
+                    ? BreakIterator.getSentenceInstance()
+                    : BreakIterator.getWordInstance();
+            iterator.setText(text.toString());
+            for (int boundary = iterator.first(); boundary != BreakIterator.DONE; boundary = iterator.next()) {
+                add(boundary);
+            }
+        }
+    }
+
+    private void add(int boundary) {
+        if (mCount == mBoundaries.length) {
+            mBoundaries = Arrays.copyOf(mBoundaries, mCount * 2);
+        }
+        mBoundaries[mCount++] = boundary;
+    }
+
+    /**
+     * @return whether this index was built for text (the same instance, unchanged length) and
+     * granularity
+     */
+    boolean isFor(CharSequence text, int granularity) {
+        return mText == text && mTextLength == text.length() && mGranularity == granularity;
+    }
+
+    /**
+     * @return the largest boundary &lt;= offset, or 0
+     */
+    int floor(int offset) {
+        int index = Arrays.binarySearch(mBoundaries, 0, mCount, offset);
+        if (index >= 0) {
+            return mBoundaries[index];
+        }
+        index = -index - 2;
+        return index < 0 ? 0 : mBoundaries[index];
+    }
+
+    /**
+     * @return the smallest boundary &gt;= offset, or the text length
+     */
+    int ceiling(int offset) {
+        int index = Arrays.binarySearch(mBoundaries, 0, mCount, offset);
+        if (index >= 0) {
+            return mBoundaries[index];
+        }
+        index = -index - 1;
+        return index >= mCount ? mTextLength : mBoundaries[index];
+    }
+
+    /**
+     * @return the smallest boundary &gt; offset, or the text length
+     */
+    int higher(int offset) {
+        return offset >= mTextLength ? mTextLength : ceiling(offset + 1);
+    }
+}
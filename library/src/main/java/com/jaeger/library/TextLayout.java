@@ -0,0 +1,50 @@
+package com.jaeger.library;
+
+/**
+ * The part of android.text.Layout the selection math needs, so that the math itself is plain
+ * Java. {@link AndroidTextLayout} wraps a real Layout, {@link FixedAdvanceLayout} lays text out
+ * on a fixed grid and {@link ProportionalAdvanceLayout} with per-char advances, for unit tests
+ * and benchmarks on the desktop JVM.
+ * <p>
+ * Unless noted otherwise every method has the contract of the Layout method of the same name.
+ */
+interface TextLayout {
+
+    CharSequence getText();
+
+    int getLineCount();
+
+    /**
+     * Also valid for line == getLineCount(), where it returns the bottom of the last line.
+     */
+    int getLineTop(int line);
+
+    /**
+     * Also valid for line == getLineCount(), where it returns the text length.
+     */
+    int getLineStart(int line);
+
+    float getLineRight(int line);
+
+    float getPrimaryHorizontal(int offset);
+
+    int getOffsetForHorizontal(int line, float horiz);
+
+    int getOffsetToLeftOf(int offset);
+
+    /**
+     * @return false if the positions on the lines are not the sums of the advances of single
+     * chars anywhere in the text (justified text, metric affecting spans), getLineWidths() is
+     * not used then
+     */
+    boolean isMeasurableByChar();
+
+    /**
+     * Writes the advance of every char of line into widths, which holds at least the line's
+     * length.
+     *
+     * @return false if the line can not be measured char by char (bidi text, tabs, ellipsis,
+     * ...), widths is left undefined then
+     */
+    boolean getLineWidths(int line, float[] widths);
+}
@@ -1,6 +1,7 @@
 package com.jaeger.library;
 
 import android.content.Context;
+import android.graphics.Rect;
 import android.text.Layout;
 import android.view.Gravity;
 import android.widget.TextView;
@@ -44,6 +45,16 @@ public class TextLayoutUtil {
         }
     }
 
+    /**
+     * Same as {@link #getPreciseOffset(TextView, int, int)}, on the geometry cached in lineCache.
+     */
+    static int getPreciseOffset(TextView textView, int x, int y, LineGeometryCache lineCache) {
+        if (AndroidTextLayout.obtain(lineCache, textView) == null) {
+            return -1;
+        }
+        return SelectionGeometry.getPreciseOffset(lineCache, x, y);
+    }
+
     public static int getHysteresisOffset(TextView textView, int x, int y, int previousOffset) {
         final Layout layout = textView.getLayout();
         if (layout == null) return -1;
@@ -121,6 +132,23 @@ public class TextLayoutUtil {
         return offset > 0 && layout.getLineForOffset(offset) == layout.getLineForOffset(offset - 1) + 1;
     }
 
+    /**
+     * @return whether the top (or bottom) of the line of offset is inside the visible part of
+     * textView, laid out as lineCache
+     */
+    static boolean isOffsetVisible(TextView textView, LineGeometryCache lineCache, int offset,
+                                   boolean atLineBottom, Rect tempRect) {
+        if (!textView.getLocalVisibleRect(tempRect)) {
+            return false;
+        }
+        int line = lineCache.getLineForOffset(offset);
+        int x = textView.getTotalPaddingLeft() + (int) lineCache.getPrimaryHorizontal(offset) - textView.getScrollX();
+        int y = textView.getTotalPaddingTop() - textView.getScrollY()
+                + (atLineBottom ? lineCache.getLineBottom(line) - 1 : lineCache.getLineTop(line));
+        // the insertion point after the last char sits on the right edge
+        return x >= tempRect.left && x <= tempRect.right && y >= tempRect.top && y < tempRect.bottom;
+    }
+
     public static int dp2px(Context context, float dpValue) {
         final float scale = context.getResources().getDisplayMetrics().density;
         return (int) (dpValue * scale + 0.5f);
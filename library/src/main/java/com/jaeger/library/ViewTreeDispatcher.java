@@ -0,0 +1,101 @@
+package com.jaeger.library;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * One pre-draw and scroll-changed listener pair per window, shared by the selections that are
+ * visible in it.
+ * <p>
+ * A helper adds itself when its selection is shown and removes itself when it is hidden. The
+ * dispatcher is registered with the ViewTreeObserver only while it has clients, so windows
+ * without a visible selection pay nothing per frame.
+ */
+class ViewTreeDispatcher implements ViewTreeObserver.OnPreDrawListener,
+        ViewTreeObserver.OnScrollChangedListener {
+
+    interface Client {
+        void onPreDraw();
+
+        void onScrollChanged();
+    }
+
+    // keyed by root view, entries are removed as soon as the last client is gone
+    private static final HashMap<View, ViewTreeDispatcher> sDispatchers = new HashMap<View, ViewTreeDispatcher>();
+
+    private final View mRootView;
+    private final ViewTreeObserver mObserver;
+    private final ArrayList<Client> mClients = new ArrayList<Client>(1);
+
+    private ViewTreeDispatcher(View rootView) {
+        mRootView = rootView;
+        mObserver = rootView.getViewTreeObserver();
+        mObserver.addOnPreDrawListener(this);
+        mObserver.addOnScrollChangedListener(this);
+    }
+
+    /**
+     * Adds client to the dispatcher of view's window, registering it if needed.
+     */
+    static void register(View view, Client client) {
+        View rootView = view.getRootView();
+        ViewTreeDispatcher dispatcher = sDispatchers.get(rootView);
+        if (dispatcher == null || !dispatcher.mObserver.isAlive()) {
+            if (dispatcher != null) {
+                dispatcher.mClients.clear();
+            }
+            dispatcher = new ViewTreeDispatcher(rootView);
+            sDispatchers.put(rootView, dispatcher);
+        }
+        if (!dispatcher.mClients.contains(client)) {
+            dispatcher.mClients.add(client);
+        }
+    }
+
+    /**
+     * Removes client from whichever dispatcher holds it, unregistering the dispatcher once it
+     * has no clients left.
+     */
+    static void unregister(Client client) {
+        if (sDispatchers.isEmpty()) {
+            return;
+        }
+        ViewTreeDispatcher empty = null;
+        for (ViewTreeDispatcher dispatcher : sDispatchers.values()) {
+            if (dispatcher.mClients.remove(client) && dispatcher.mClients.isEmpty()) {
+                empty = dispatcher;
+                break;
+            }
+        }
+        if (empty != null) {
+            sDispatchers.remove(empty.mRootView);
+            if (empty.mObserver.isAlive()) {
+                empty.mObserver.removeOnPreDrawListener(empty);
+                empty.mObserver.removeOnScrollChangedListener(empty);
+            }
+        }
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        // clients may unregister while being dispatched to
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            if (i < mClients.size()) {
+                mClients.get(i).onPreDraw();
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void onScrollChanged() {
+        for (int i = mClients.size() - 1; i >= 0; i--) {
+            if (i < mClients.size()) {
+                mClients.get(i).onScrollChanged();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.jaeger.library;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GlyphAdvanceIndexTest {
+
+    private static final float ADVANCE = 8;
+    private static final int LINE_HEIGHT = 20;
+    private static final float WIDTH = 200;
+
+    private static final String[] TEXTS = {
+            "",
+            "The quick brown fox jumps over the lazy dog, while Mr. Wilson will mill a little millet.",
+            "short\n\nlines, an empty one\nand a very long line that has to be wrapped more than once by the layout",
+            // CJK mixed with Latin, the CJK chars are twice as wide
+            "\u4e2d\u6587 and English \u6df7\u6392\u3002\u8fd9\u4e00\u884c\u5f88\u957f"
+                    + "\u5f88\u957f\u5f88\u957f\u5f88\u957f\u5f88\u957f\u5f88\u957f\u5f88\u957f",
+            "ends with a line feed\n"
+    };
+
+    @Test
+    public void advanceIndex_matchesLayout() {
+        for (String text : TEXTS) {
+            TextLayout layout = new ProportionalAdvanceLayout(text, WIDTH, ADVANCE, LINE_HEIGHT);
+            LineGeometryCache plain = new LineGeometryCache().obtain(layout);
+            LineGeometryCache indexed = new LineGeometryCache();
+            indexed.setAdvanceIndexEnabled(true);
+            indexed.obtain(layout);
+            assertTrue(indexed.isAdvanceIndexUsed());
+
+            for (int offset = 0; offset <= text.length(); offset++) {
+                assertEquals(text + " @" + offset, plain.getPrimaryHorizontal(offset),
+                        indexed.getPrimaryHorizontal(offset), 0f);
+                assertEquals(text + " @" + offset, plain.getOffsetToLeftOf(offset), indexed.getOffsetToLeftOf(offset));
+            }
+            for (int line = 0; line < plain.getLineCount(); line++) {
+                // whole pixels hit the middles between chars, where ties are broken
+                for (float x = -ADVANCE; x <= plain.getLineRight(line) + ADVANCE; x += 1) {
+                    assertEquals(text + " line " + line + " x " + x, plain.getOffsetForHorizontal(line, x),
+                            indexed.getOffsetForHorizontal(line, x));
+                }
+            }
+            int height = plain.getLineCount() * LINE_HEIGHT;
+            for (int y = 0; y < height; y += 3) {
+                for (int x = -10; x < WIDTH + 10; x += 3) {
+                    assertEquals(SelectionGeometry.getPreciseOffset(plain, x, y),
+                            SelectionGeometry.getPreciseOffset(indexed, x, y));
+                    for (int previous = 0; previous <= text.length(); previous += 7) {
+                        assertEquals(SelectionGeometry.getHysteresisOffset(plain, x, y, previous),
+                                SelectionGeometry.getHysteresisOffset(indexed, x, y, previous));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void advanceIndex_notUsedForLayoutNotMeasurableByChar() {
+        // justified text or text with metric affecting spans
+        TextLayout layout = new ProportionalAdvanceLayout(TEXTS[1], WIDTH, ADVANCE, LINE_HEIGHT) {
+            @Override
+            public boolean isMeasurableByChar() {
+                return false;
+            }
+
+            @Override
+            public boolean getLineWidths(int line, float[] widths) {
+                throw new AssertionError("measured line " + line);
+            }
+        };
+        LineGeometryCache lineCache = new LineGeometryCache();
+        lineCache.setAdvanceIndexEnabled(true);
+        lineCache.obtain(layout);
+
+        assertFalse(lineCache.isAdvanceIndexUsed());
+        assertEquals(layout.getPrimaryHorizontal(5), lineCache.getPrimaryHorizontal(5), 0f);
+        assertEquals(layout.getOffsetForHorizontal(1, 50), lineCache.getOffsetForHorizontal(1, 50));
+    }
+}
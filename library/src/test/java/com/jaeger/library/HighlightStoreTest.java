@@ -0,0 +1,256 @@
+package com.jaeger.library;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class HighlightStoreTest {
+
+    private static final long TEXT = HighlightStore.fingerprint("The quick brown fox");
+    private static final long OTHER_TEXT = HighlightStore.fingerprint("jumps over the lazy dog");
+
+    // compaction runs on the calling thread
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private HighlightStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mFolder.getRoot(), "highlights");
+        mStore = new HighlightStore(mFile, DIRECT);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mStore.close();
+    }
+
+    @Test
+    public void fingerprint_dependsOnCharsOnly() {
+        assertEquals(HighlightStore.fingerprint("abc"), HighlightStore.fingerprint(new StringBuilder("abc")));
+        assertNotEquals(HighlightStore.fingerprint("abc"), HighlightStore.fingerprint("abd"));
+        assertNotEquals(HighlightStore.fingerprint(""), HighlightStore.fingerprint("\u0000"));
+    }
+
+    @Test
+    public void load_returnsOnlyHighlightsOfText() throws IOException {
+        mStore.put(TEXT, highlight(2, 4, 9));
+        mStore.put(OTHER_TEXT, highlight(1, 0, 5));
+        mStore.put(TEXT, highlight(1, 0, 3));
+
+        List<HighlightLayer.Highlight> highlights = mStore.load(TEXT);
+        assertEquals(2, highlights.size());
+        assertHighlight(highlights.get(0), 1, 0, 3);
+        assertHighlight(highlights.get(1), 2, 4, 9);
+        assertTrue(mStore.load(HighlightStore.fingerprint("unknown")).isEmpty());
+    }
+
+    @Test
+    public void putAndRemove_lastRecordWins() throws IOException {
+        mStore.put(TEXT, highlight(1, 0, 3));
+        mStore.put(TEXT, highlight(2, 4, 9));
+        mStore.put(TEXT, highlight(1, 10, 12));
+        mStore.remove(TEXT, 2);
+
+        List<HighlightLayer.Highlight> highlights = mStore.load(TEXT);
+        assertEquals(1, highlights.size());
+        assertHighlight(highlights.get(0), 1, 10, 12);
+    }
+
+    @Test
+    public void reopen_keepsHighlights() throws IOException {
+        mStore.put(TEXT, highlight(1, 0, 3));
+        mStore.put(OTHER_TEXT, highlight(7, 2, 6));
+        mStore.remove(TEXT, 1);
+        mStore.put(TEXT, highlight(3, 5, 8));
+        mStore.close();
+
+        mStore = new HighlightStore(mFile, DIRECT);
+        List<HighlightLayer.Highlight> highlights = mStore.load(TEXT);
+        assertEquals(1, highlights.size());
+        assertHighlight(highlights.get(0), 3, 5, 8);
+        assertHighlight(mStore.load(OTHER_TEXT).get(0), 7, 2, 6);
+    }
+
+    @Test
+    public void compact_dropsReplacedRecordsAndKeepsHighlights() throws IOException {
+        for (int i = 0; i < 10; i++) {
+            mStore.put(TEXT, highlight(i, i, i + 1));
+            mStore.put(TEXT, highlight(i, i, i + 2));
+        }
+        mStore.remove(TEXT, 0);
+        mStore.put(OTHER_TEXT, highlight(1, 0, 1));
+        long lengthBefore = mFile.length();
+
+        mStore.compact();
+
+        assertEquals(10, mStore.getRecordCount());
+        assertTrue(mFile.length() < lengthBefore);
+        List<HighlightLayer.Highlight> highlights = mStore.load(TEXT);
+        assertEquals(9, highlights.size());
+        for (int i = 0; i < 9; i++) {
+            assertHighlight(highlights.get(i), i + 1, i + 1, i + 3);
+        }
+
+        // the log after the sorted region is applied on top of it
+        mStore.put(TEXT, highlight(0, 20, 30));
+        mStore.remove(TEXT, 5);
+        mStore.close();
+        mStore = new HighlightStore(mFile, DIRECT);
+        highlights = mStore.load(TEXT);
+        assertEquals(9, highlights.size());
+        assertHighlight(highlights.get(0), 0, 20, 30);
+        assertEquals(1, mStore.load(OTHER_TEXT).size());
+    }
+
+    @Test
+    public void append_compactsOnceLogIsLong() throws IOException {
+        for (int i = 0; i < 1000; i++) {
+            mStore.put(TEXT, highlight(i % 10, i, i + 1));
+        }
+
+        assertTrue(mStore.getRecordCount() < 1000);
+        List<HighlightLayer.Highlight> highlights = mStore.load(TEXT);
+        assertEquals(10, highlights.size());
+        assertHighlight(highlights.get(9), 9, 999, 1000);
+    }
+
+    @Test
+    public void compact_waitsForBackgroundCompaction() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        mStore.close();
+        mStore = new HighlightStore(mFile, executor);
+        final AtomicBoolean isDone = new AtomicBoolean();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread compactor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!isDone.get()) {
+                        mStore.compact();
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        compactor.start();
+
+        for (int i = 0; i < 5000; i++) {
+            mStore.put(TEXT, highlight(i % 100, i, i + 1));
+        }
+        isDone.set(true);
+        compactor.join();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertNull(failure.get());
+        List<HighlightLayer.Highlight> highlights = mStore.load(TEXT);
+        assertEquals(100, highlights.size());
+        assertHighlight(highlights.get(99), 99, 4999, 5000);
+        // no temporary file is left behind
+        assertEquals(1, mFolder.getRoot().list().length);
+    }
+
+    @Test
+    public void compact_keepsStoreOpenWhenFileCanNotBeReplaced() throws IOException {
+        mStore.close();
+        mStore = new HighlightStore(mFile, DIRECT) {
+            @Override
+            boolean replaceFile(File compactFile) {
+                return false;
+            }
+        };
+        mStore.put(TEXT, highlight(1, 0, 3));
+        mStore.put(TEXT, highlight(1, 4, 9));
+
+        try {
+            mStore.compact();
+            fail();
+        } catch (IOException expected) {
+        }
+
+        assertEquals(2, mStore.getRecordCount());
+        assertEquals(1, mFolder.getRoot().list().length);
+        mStore.put(TEXT, highlight(2, 1, 2));
+        List<HighlightLayer.Highlight> highlights = mStore.load(TEXT);
+        assertEquals(2, highlights.size());
+        assertHighlight(highlights.get(0), 1, 4, 9);
+
+        mStore.close();
+        mStore = new HighlightStore(mFile, DIRECT);
+        assertEquals(2, mStore.load(TEXT).size());
+    }
+
+    @Test
+    public void open_dropsTornRecord() throws IOException {
+        mStore.put(TEXT, highlight(1, 0, 3));
+        mStore.put(TEXT, highlight(2, 4, 9));
+        mStore.close();
+
+        // a crash in the middle of the last write
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(file.length() - 5);
+        file.close();
+
+        mStore = new HighlightStore(mFile, DIRECT);
+        List<HighlightLayer.Highlight> highlights = mStore.load(TEXT);
+        assertEquals(1, highlights.size());
+        assertHighlight(highlights.get(0), 1, 0, 3);
+
+        // appends go after the last good record
+        mStore.put(TEXT, highlight(3, 1, 2));
+        mStore.close();
+        mStore = new HighlightStore(mFile, DIRECT);
+        assertEquals(2, mStore.load(TEXT).size());
+    }
+
+    @Test
+    public void open_startsOverOnForeignFile() throws IOException {
+        mStore.close();
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        file.setLength(0);
+        file.writeBytes("not a highlight store");
+        file.close();
+
+        mStore = new HighlightStore(mFile, DIRECT);
+        assertTrue(mStore.load(TEXT).isEmpty());
+        mStore.put(TEXT, highlight(1, 0, 3));
+        assertEquals(1, mStore.load(TEXT).size());
+    }
+
+    private static HighlightLayer.Highlight highlight(int id, int start, int end) {
+        return new HighlightLayer.Highlight(id, start, end, 0x404086F8);
+    }
+
+    private static void assertHighlight(HighlightLayer.Highlight highlight, int id, int start, int end) {
+        assertEquals(id, highlight.getId());
+        assertEquals(start, highlight.getStart());
+        assertEquals(end, highlight.getEnd());
+        assertEquals(0x404086F8, highlight.getColor());
+    }
+}
@@ -0,0 +1,149 @@
+package com.jaeger.library;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IntervalIndexTest {
+
+    @Test
+    public void findAt_returnsContainingRangesOrderedByStart() {
+        IntervalIndex<String> index = new IntervalIndex<String>();
+        index.add(1, 10, 20, "a");
+        index.add(2, 0, 5, "b");
+        index.add(3, 15, 30, "c");
+
+        assertEquals(Arrays.asList("b"), findAt(index, 0));
+        assertEquals(Arrays.asList(), findAt(index, 5));
+        assertEquals(Arrays.asList("a", "c"), findAt(index, 15));
+        assertEquals(Arrays.asList("c"), findAt(index, 20));
+        assertEquals(Arrays.asList(), findAt(index, 30));
+    }
+
+    @Test
+    public void findOverlapping_usesHalfOpenRanges() {
+        IntervalIndex<String> index = new IntervalIndex<String>();
+        index.add(1, 10, 20, "a");
+        index.add(2, 20, 25, "b");
+
+        assertEquals(Arrays.asList(), findOverlapping(index, 0, 10));
+        assertEquals(Arrays.asList("a"), findOverlapping(index, 0, 11));
+        assertEquals(Arrays.asList("a", "b"), findOverlapping(index, 19, 21));
+        assertEquals(Arrays.asList("b"), findOverlapping(index, 20, 100));
+        // an empty query overlaps nothing
+        assertEquals(Arrays.asList(), findOverlapping(index, 15, 15));
+    }
+
+    @Test
+    public void add_keepsDuplicateRangesAndReplacesSameId() {
+        IntervalIndex<String> index = new IntervalIndex<String>();
+        index.add(2, 5, 10, "b");
+        index.add(1, 5, 10, "a");
+        index.add(3, 5, 10, "c");
+        // equal starts are ordered by id
+        assertEquals(Arrays.asList("a", "b", "c"), findAt(index, 7));
+
+        index.add(2, 40, 50, "moved");
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList("a", "c"), findAt(index, 7));
+        assertEquals("moved", index.get(2));
+        assertEquals(Arrays.asList("a", "c", "moved"), getAll(index));
+    }
+
+    @Test
+    public void emptyRange_overlapsNothing() {
+        IntervalIndex<String> index = new IntervalIndex<String>();
+        index.add(1, 5, 5, "empty");
+        index.add(2, 0, 10, "a");
+
+        assertEquals(Arrays.asList("a"), findAt(index, 5));
+        assertEquals(Arrays.asList("a"), findOverlapping(index, 4, 6));
+        assertEquals(Arrays.asList("a", "empty"), getAll(index));
+        assertTrue(index.contains(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void add_rejectsReversedRange() {
+        new IntervalIndex<String>().add(1, 5, 4, "a");
+    }
+
+    @Test
+    public void remove_returnsValueOrNullForMissingId() {
+        IntervalIndex<String> index = new IntervalIndex<String>();
+        index.add(1, 0, 10, "a");
+        index.add(2, 5, 15, "b");
+
+        assertNull(index.remove(3));
+        assertEquals(2, index.size());
+        assertEquals("a", index.remove(1));
+        assertNull(index.remove(1));
+        assertFalse(index.contains(1));
+        assertEquals(Arrays.asList("b"), findAt(index, 7));
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(Arrays.asList(), findOverlapping(index, 0, 100));
+    }
+
+    @Test
+    public void randomOperations_matchLinearScan() {
+        Random random = new Random(42);
+        IntervalIndex<int[]> index = new IntervalIndex<int[]>();
+        int[][] ranges = new int[200][];
+        for (int step = 0; step < 5000; step++) {
+            int id = random.nextInt(ranges.length);
+            if (random.nextInt(3) == 0) {
+                assertSame(ranges[id], index.remove(id));
+                ranges[id] = null;
+            } else {
+                int start = random.nextInt(1000);
+                int[] range = {start, start + random.nextInt(50), id};
+                index.add(id, range[0], range[1], range);
+                ranges[id] = range;
+            }
+
+            int start = random.nextInt(1100) - 50;
+            int end = start + random.nextInt(80);
+            List<int[]> found = new ArrayList<int[]>();
+            index.findOverlapping(start, end, found);
+            List<int[]> expected = new ArrayList<int[]>();
+            for (int[] range : ranges) {
+                if (range != null && start < end && range[0] < end && range[1] > start && range[0] < range[1]) {
+                    expected.add(range);
+                }
+            }
+            assertEquals(expected.size(), found.size());
+            for (int i = 0; i < found.size(); i++) {
+                assertTrue(found.contains(expected.get(i)));
+                if (i > 0) {
+                    int[] previous = found.get(i - 1);
+                    int[] current = found.get(i);
+                    assertTrue(previous[0] < current[0] || (previous[0] == current[0] && previous[2] < current[2]));
+                }
+            }
+        }
+    }
+
+    private static List<String> findAt(IntervalIndex<String> index, int offset) {
+        List<String> out = new ArrayList<String>();
+        index.findAt(offset, out);
+        return out;
+    }
+
+    private static List<String> findOverlapping(IntervalIndex<String> index, int start, int end) {
+        List<String> out = new ArrayList<String>();
+        index.findOverlapping(start, end, out);
+        return out;
+    }
+
+    private static List<String> getAll(IntervalIndex<String> index) {
+        List<String> out = new ArrayList<String>();
+        index.getAll(out);
+        return out;
+    }
+}
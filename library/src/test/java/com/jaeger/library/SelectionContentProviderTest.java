@@ -0,0 +1,122 @@
+package com.jaeger.library;
+
+import android.app.Activity;
+import android.content.ClipData;
+import android.content.ClipboardManager;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class SelectionContentProviderTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Activity mActivity;
+    private TextView mTextView;
+    private SelectionContentProvider mProvider;
+    private String mText;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.setupActivity(Activity.class);
+        mTextView = new TextView(mActivity);
+        mActivity.setContentView(mTextView);
+        mProvider = Robolectric.buildContentProvider(SelectionContentProvider.class)
+                .create(mActivity.getPackageName() + ".selectabletext").get();
+
+        // larger than the large selection threshold and the provider's chunks, with chars
+        // that take more than one byte in UTF-8 across the chunk boundaries
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 200 * 1024; i++) {
+            text.append("line ").append(i).append(" \u4e2d\u6587 \u00e9t\u00e9\n");
+        }
+        mText = text.toString();
+        mTextView.setText(mText);
+    }
+
+    @Test
+    public void copy_largeSelectionIsReadableMoreThanOnce() throws IOException {
+        Uri uri = copyAll();
+
+        assertEquals(mText, read(uri));
+        // a second paste, a clipboard preview or a suggestion strip read the same URI
+        assertEquals(mText, read(uri));
+    }
+
+    @Test
+    public void copy_laterCopyReplacesPublishedContent() throws IOException {
+        Uri first = copyAll();
+        Uri second = copyAll();
+
+        assertNotEquals(first, second);
+        assertNull(SelectionContentProvider.find(first));
+        assertEquals(mText, read(second));
+    }
+
+    /**
+     * Selects all text of a large document mode helper and taps copy.
+     *
+     * @return the URI the clipboard got
+     */
+    private Uri copyAll() {
+        SelectableTextHelper helper = new SelectableTextHelper.Builder(mTextView)
+                .setLargeDocumentMode(true)
+                .build(false);
+        SelectionManager.getInstance().setWindowHelper(helper);
+        SelectableTextHelper.showWaitingTextSelector(true);
+        SelectionManager.getInstance().getViewOwner().copySelection();
+
+        ClipboardManager clipboard = (ClipboardManager) mActivity.getSystemService(Context.CLIPBOARD_SERVICE);
+        ClipData clip = clipboard.getPrimaryClip();
+        assertEquals(1, clip.getItemCount());
+        assertNull(clip.getItemAt(0).getText());
+        Uri uri = clip.getItemAt(0).getUri();
+        assertNotNull(uri);
+        return uri;
+    }
+
+    /**
+     * Streams the content of uri the way the provider's pipe does, into a file.
+     */
+    private String read(Uri uri) throws IOException {
+        CharSequence content = SelectionContentProvider.find(uri);
+        assertNotNull(content);
+        File file = mFolder.newFile();
+        ParcelFileDescriptor output = ParcelFileDescriptor.open(file,
+                ParcelFileDescriptor.MODE_READ_WRITE | ParcelFileDescriptor.MODE_TRUNCATE);
+        mProvider.writeDataToPipe(output, uri, mProvider.getType(uri), null, content);
+        output.close();
+
+        StringBuilder text = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            char[] buffer = new char[4096];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, count);
+            }
+        } finally {
+            reader.close();
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package com.jaeger.library;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SelectionGeometryTest {
+
+    // three lines of ten chars, each char 10 wide and each line 20 high
+    private static final String TEXT = "0123456789abcdefghijABCDEFGHIJ";
+    private static final int ADVANCE = 10;
+    private static final int LINE_HEIGHT = 20;
+
+    private LineGeometryCache mLineCache;
+    private SelectionGeometry.HandleDrag mDrag;
+
+    @Before
+    public void setUp() {
+        mLineCache = new LineGeometryCache().obtain(new FixedAdvanceLayout(TEXT, 10, ADVANCE, LINE_HEIGHT));
+        mDrag = new SelectionGeometry.HandleDrag();
+    }
+
+    @Test
+    public void moveTo_startHandleSwapsOnceItCrossesTheEnd() {
+        mDrag.start(true, 2, 5);
+
+        assertTrue(mDrag.moveTo(4));
+        assertSelection(true, 4, 5);
+
+        // past the anchor, the start handle becomes the end handle
+        assertTrue(mDrag.moveTo(7));
+        assertSelection(false, 5, 7);
+
+        // onto the anchor, an empty selection keeps the roles
+        assertTrue(mDrag.moveTo(5));
+        assertSelection(false, 5, 5);
+
+        assertTrue(mDrag.moveTo(3));
+        assertSelection(true, 3, 5);
+        assertFalse(mDrag.moveTo(3));
+    }
+
+    @Test
+    public void moveTo_endHandleSwapsOnceItCrossesTheStart() {
+        mDrag.start(false, 2, 5);
+
+        assertTrue(mDrag.moveTo(1));
+        assertSelection(true, 1, 2);
+
+        assertTrue(mDrag.moveTo(12));
+        assertSelection(false, 2, 12);
+    }
+
+    @Test
+    public void getDragOffset_staysOnLineWithinHalfALine() {
+        mDrag.start(false, 0, 5);
+
+        // 5px below line 0, half a line is 10px
+        assertEquals(5, mDrag.getDragOffset(mLineCache, 52, LINE_HEIGHT + 5, null));
+        // 11px below line 0
+        assertEquals(15, mDrag.getDragOffset(mLineCache, 52, LINE_HEIGHT + 11, null));
+
+        mDrag.start(false, 0, 15);
+        // 5px above line 1
+        assertEquals(15, mDrag.getDragOffset(mLineCache, 52, LINE_HEIGHT - 5, null));
+        // 11px above line 1
+        assertEquals(5, mDrag.getDragOffset(mLineCache, 52, LINE_HEIGHT - 11, null));
+    }
+
+    @Test
+    public void getDragOffset_jumpsOverMoreThanOneLine() {
+        mDrag.start(false, 0, 5);
+        assertEquals(25, mDrag.getDragOffset(mLineCache, 52, 2 * LINE_HEIGHT + 1, null));
+
+        mDrag.start(true, 25, 30);
+        assertEquals(3, mDrag.getDragOffset(mLineCache, 32, 1, null));
+    }
+
+    @Test
+    public void getDragOffset_reachesEndOfLine() {
+        mDrag.start(false, 0, 5);
+
+        // near the right edge of line 0 the end handle selects its last char, not the first
+        // char of line 1
+        int offset = mDrag.getDragOffset(mLineCache, 98, 10, null);
+        assertEquals(10, offset);
+        assertTrue(mDrag.moveTo(offset));
+        assertSelection(false, 0, 10);
+
+        // and stays there on the next sample
+        assertEquals(10, mDrag.getDragOffset(mLineCache, 98, 10, null));
+
+        // further left it is an ordinary offset of line 0 again
+        assertEquals(9, mDrag.getDragOffset(mLineCache, 90, 10, null));
+    }
+
+    @Test
+    public void getDragOffset_snapsAwayFromTheAnchor() {
+        String text = "hello world again";
+        LineGeometryCache lineCache =
+                new LineGeometryCache().obtain(new FixedAdvanceLayout(text, 40, ADVANCE, LINE_HEIGHT));
+        TextBoundaryIndex words = new TextBoundaryIndex(text, TextBoundaryIndex.WORD);
+
+        // inside "world", after the anchor: to its end
+        mDrag.start(false, 0, 5);
+        assertEquals(11, mDrag.getDragOffset(lineCache, 82, 10, words));
+
+        // inside "world", before the anchor: to its start
+        mDrag.start(true, 12, 17);
+        assertEquals(6, mDrag.getDragOffset(lineCache, 82, 10, words));
+    }
+
+    private void assertSelection(boolean isLeft, int start, int end) {
+        assertEquals(isLeft, mDrag.isLeft());
+        assertEquals(start, mDrag.getStart());
+        assertEquals(end, mDrag.getEnd());
+    }
+}
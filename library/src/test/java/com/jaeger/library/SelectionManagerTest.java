@@ -0,0 +1,50 @@
+package com.jaeger.library;
+
+import android.app.Activity;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+public class SelectionManagerTest {
+
+    @Test
+    public void destroyedActivity_isNotRetained() {
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).setup();
+        WeakReference<Activity> activity = new WeakReference<Activity>(controller.get());
+        setUpWaitingHelper(controller.get());
+        SelectionManager manager = SelectionManager.getInstance();
+        int windowCount = manager.getWindowCount();
+        assertNotNull(manager.getLastHelper());
+
+        controller.pause().stop().destroy();
+        controller = null;
+        for (int i = 0; i < 20 && activity.get() != null; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+
+        assertNull(activity.get());
+        assertTrue(manager.getWindowCount() < windowCount);
+        assertNull(manager.getLastHelper());
+    }
+
+    /**
+     * Gives activity a TextView with a waiting helper, without leaving a reference to either
+     * on the test's stack.
+     */
+    private static void setUpWaitingHelper(Activity activity) {
+        TextView textView = new TextView(activity);
+        textView.setText("The quick brown fox jumps over the lazy dog");
+        activity.setContentView(textView);
+        SelectableTextHelper.setWaitingHelper(textView);
+    }
+}